@@ -0,0 +1,178 @@
+package dev.flashlabs.flashlibs.database;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sqlite.SQLiteDataSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.sql.DataSource;
+import javax.sql.rowset.CachedRowSet;
+
+/**
+ * Benchmarks the statement methods of {@link DatabaseService} against embedded
+ * SQLite and H2 databases, with and without a {@link ConnectionPool}. Run with
+ * {@code gradle jmh}, which also reports the allocation rate of each
+ * benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final String SELECT = "SELECT id, name, value FROM Data WHERE id = ?";
+    private static final String UPDATE = "UPDATE Data SET value = ? WHERE id = ?";
+    private static final RowMapper<Row> MAPPER = RowMapper.of(Row.class);
+
+    @Param({"sqlite", "h2"})
+    public String database;
+
+    @Param({"0", "4"})
+    public int pool;
+
+    private File file;
+    private DatabaseService service;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        DataSource source;
+        if (database.equals("sqlite")) {
+            file = File.createTempFile("flashlibs-benchmark", ".db");
+            SQLiteDataSource sqlite = new SQLiteDataSource();
+            sqlite.setUrl("jdbc:sqlite:" + file.getAbsolutePath());
+            source = sqlite;
+        } else {
+            JdbcDataSource h2 = new JdbcDataSource();
+            h2.setURL("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+            source = h2;
+        }
+        DatabaseService.Builder builder = DatabaseService.builder(source);
+        if (pool > 0) {
+            builder.pool(pool);
+        }
+        service = builder.build();
+        service.update("DROP TABLE IF EXISTS Data");
+        service.update("CREATE TABLE Data (id INTEGER PRIMARY KEY, name VARCHAR(32), value BIGINT)");
+        service.batch("INSERT INTO Data VALUES (?, ?, ?)", IntStream.range(0, ROWS)
+                .mapToObj(i -> new Object[] {i, "name-" + i, (long) i})
+                .collect(Collectors.toList()));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws SQLException {
+        service.update("DROP TABLE Data");
+        service.close();
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    private static int id() {
+        return ThreadLocalRandom.current().nextInt(ROWS);
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        service.update(UPDATE, ThreadLocalRandom.current().nextLong(), id());
+    }
+
+    @Benchmark
+    public CachedRowSet query() throws SQLException {
+        return service.query(SELECT, id());
+    }
+
+    @Benchmark
+    public List<Row> queryMapped() throws SQLException {
+        return service.query(MAPPER, SELECT, id());
+    }
+
+    @Benchmark
+    public CachedRowSet materialize() throws SQLException {
+        return service.query("SELECT id, name, value FROM Data");
+    }
+
+    @Benchmark
+    public ResultTable materializeTable() throws SQLException {
+        return service.table("SELECT id, name, value FROM Data");
+    }
+
+    @Benchmark
+    public void transaction() throws SQLException {
+        try (Transaction transaction = service.getTransaction()) {
+            transaction.update(UPDATE, ThreadLocalRandom.current().nextLong(), id());
+            transaction.commit();
+        }
+    }
+
+    /**
+     * Executes a query on a connection held for the whole trial, which reuses
+     * the cached statement.
+     */
+    @Benchmark
+    public long statementReuse(Held held) throws SQLException {
+        try (ResultSet results = held.connection.getStatement(SELECT).setParams(id()).query()) {
+            return results.next() ? results.getLong(3) : 0;
+        }
+    }
+
+    /**
+     * A connection held by each benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Held {
+
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void setup(DatabaseBenchmark benchmark) throws SQLException {
+            connection = benchmark.service.getConnection();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws SQLException {
+            connection.close();
+        }
+
+    }
+
+    /**
+     * A row of the benchmark table.
+     */
+    public static final class Row {
+
+        private final int id;
+        private final String name;
+        private final long value;
+
+        public Row(int id, String name, long value) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package dev.flashlabs.flashlibs.message;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.TextTemplate;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks applying arguments to a {@link MessageTemplate} compared to
+ * applying a map to the equivalent {@link TextTemplate}, which is how
+ * templates were previously applied. Run with {@code gradle jmh
+ * -Pjmh=MessageTemplate}, which also reports the allocation rate of each
+ * benchmark. The template does not use formatting codes, as deserializing
+ * them requires a Sponge implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageTemplateBenchmark {
+
+    private final MessageTemplate template = MessageTemplate.of("Welcome ${@player} to ${@world}, ${@player}!");
+    private final TextTemplate legacy = TextTemplate.of(
+            Text.of("Welcome "), TextTemplate.arg("player"), Text.of(" to "), TextTemplate.arg("world"),
+            Text.of(", "), TextTemplate.arg("player"), Text.of("!"));
+    private final Map<String, Object> args = ImmutableMap.of("player", "Notch", "world", "overworld");
+
+    @Benchmark
+    public Text legacy() {
+        Map<String, Object> map = Maps.newHashMap();
+        map.put("player", "Notch");
+        map.put("world", "overworld");
+        legacy.getArguments().keySet().forEach(k -> map.putIfAbsent(k, "@" + k));
+        return legacy.apply(map).build();
+    }
+
+    @Benchmark
+    public Text getPairs() {
+        return template.get("player", "Notch", "world", "overworld");
+    }
+
+    @Benchmark
+    public Text getMap() {
+        return template.get(args);
+    }
+
+    @Benchmark
+    public Text render() {
+        return template.render("Notch", "overworld");
+    }
+
+}
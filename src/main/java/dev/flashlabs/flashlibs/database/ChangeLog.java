@@ -0,0 +1,277 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Represents a log of changes stored in the database, which allows multiple
+ * servers sharing a database to invalidate their caches when another server
+ * modifies data. Each change consists of a table and an optional key, and is
+ * assigned an increasing version by the database.
+ *
+ * <p>Modifications executed through the service are recorded automatically
+ * for the table they modify, using the same connection so that changes within
+ * a transaction are only visible once it is committed. Each statement is
+ * recorded once per transaction. Modifications whose table cannot be
+ * determined (such as those with joins) and changes made outside of the
+ * service must be recorded manually, which can also provide a key.</p>
+ *
+ * <p>Each server periodically polls for changes with a version greater than
+ * the last version it has seen, which is a range scan over the primary key.
+ * New changes invalidate the affected table in the service's
+ * {@link QueryCache} and are passed to any listeners, excluding changes
+ * recorded by this log itself. Versions may become visible out of order when
+ * concurrent transactions commit, so missing versions are polled again for a
+ * short period before they are assumed to be rolled back.</p>
+ *
+ * <p>Changes are deleted once they are older than the retention period, which
+ * must be longer than the time any server may go without polling.</p>
+ */
+public final class ChangeLog implements AutoCloseable {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final long GAP_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    private final DatabaseService service;
+    private final String node = UUID.randomUUID().toString();
+    private final String insert;
+    private final String select;
+    private final String delete;
+    private final String table;
+    private final long retention;
+    private final List<BiConsumer<String, String>> listeners = Lists.newCopyOnWriteArrayList();
+    private final NavigableSet<Long> seen = Sets.newTreeSet();
+    private final Deque<long[]> checkpoints = new ArrayDeque<>();
+    private final ScheduledFuture<?> task;
+    private long cursor;
+    private long gap = 0;
+
+    private ChangeLog(Builder builder, DatabaseService service) throws SQLException {
+        this.service = service;
+        Preconditions.checkState(service.getChangeLog() == null, "A change log is already recording modifications.");
+        retention = builder.retention.toNanos();
+        table = builder.table.toLowerCase();
+        insert = "INSERT INTO " + builder.table + " (table_name, key_value, node) VALUES (?, ?, ?)";
+        select = "SELECT version, table_name, key_value, node FROM " + builder.table + " WHERE version > ? ORDER BY version";
+        delete = "DELETE FROM " + builder.table + " WHERE version <= ?";
+        service.update("CREATE TABLE IF NOT EXISTS " + builder.table + " ("
+                + "version " + service.getDialect().getIdentity() + ", "
+                + "table_name VARCHAR(64) NOT NULL, "
+                + "key_value VARCHAR(255), "
+                + "node VARCHAR(36) NOT NULL)");
+        try (Connection connection = service.getConnection();
+             ResultSet results = connection.query("SELECT MAX(version) FROM " + builder.table)) {
+            cursor = results.next() ? results.getLong(1) : 0;
+        }
+        task = service.schedule(builder.interval, () -> {
+            poll();
+            return null;
+        });
+        service.register(this);
+        service.setChangeLog(this);
+    }
+
+    /**
+     * Records a change to the given table and key, where a null key indicates
+     * the entire table has changed.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public void record(String table, @Nullable String key) throws SQLException {
+        service.update(insert, table, key, node);
+    }
+
+    /**
+     * Records a change as in {@link #record(String, String)} using the given
+     * connection, such as a {@link Transaction} so that the change is only
+     * visible once the modification is committed.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public void record(Connection connection, String table, @Nullable String key) throws SQLException {
+        connection.update(insert, table, key, node);
+    }
+
+    /**
+     * Records the table modified by the given SQL statement using the given
+     * connection, unless the table cannot be determined or is the table of
+     * this log.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    void recordModification(Connection connection, String sql) throws SQLException {
+        Optional<ImmutableSet<String>> tables = QueryCache.parseWrites(sql);
+        if (tables.isPresent()) {
+            for (String modified : tables.get()) {
+                if (!modified.equals(table)) {
+                    connection.update(insert, modified, null, node);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a listener which is called with the table and key of each change
+     * recorded by other servers, where the key is null if the entire table
+     * has changed. Listeners are called on the service's worker pool.
+     */
+    public void addListener(BiConsumer<String, String> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BiConsumer<String, String> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Polls for new changes immediately and delivers them to the query cache
+     * and listeners. This is called periodically by the service, and
+     * additionally deletes changes older than the retention period.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public synchronized void poll() throws SQLException {
+        try (Connection connection = service.getConnection()) {
+            try (ResultSet results = connection.query(select, cursor)) {
+                while (results.next()) {
+                    long version = results.getLong(1);
+                    if (seen.add(version) && !node.equals(results.getString(4))) {
+                        deliver(results.getString(2), results.getString(3));
+                    }
+                }
+            }
+            long now = System.nanoTime();
+            advance(now);
+            if (checkpoints.isEmpty() || checkpoints.peekLast()[1] < cursor) {
+                checkpoints.addLast(new long[] {now, cursor});
+            }
+            long compacted = -1;
+            while (!checkpoints.isEmpty() && now - checkpoints.peekFirst()[0] > retention) {
+                compacted = checkpoints.removeFirst()[1];
+            }
+            if (compacted > 0) {
+                connection.update(delete, compacted);
+            }
+        }
+    }
+
+    /**
+     * Advances the cursor over all consecutive versions that have been seen.
+     * If a version is missing for longer than the gap timeout, it is assumed
+     * to be rolled back and skipped.
+     */
+    private void advance(long now) {
+        while (!seen.isEmpty() && seen.first() <= cursor + 1) {
+            cursor = Math.max(cursor, seen.pollFirst());
+        }
+        if (seen.isEmpty()) {
+            gap = 0;
+        } else if (gap == 0) {
+            gap = now;
+        } else if (now - gap > GAP_TIMEOUT) {
+            cursor = seen.first() - 1;
+            gap = 0;
+            advance(now);
+        }
+    }
+
+    private void deliver(String table, @Nullable String key) {
+        service.getQueryCache().ifPresent(c -> c.invalidateTable(table));
+        for (BiConsumer<String, String> listener : listeners) {
+            try {
+                listener.accept(table, key);
+            } catch (RuntimeException e) {
+                service.getLogger().error("Change log listener failed for " + table + ".", e);
+            }
+        }
+    }
+
+    /**
+     * Stops recording modifications and polling for changes. This log is
+     * closed automatically when the service is closed.
+     */
+    @Override
+    public void close() {
+        task.cancel(false);
+        service.unregister(this);
+        service.setChangeLog(null);
+    }
+
+    /**
+     * Creates a new builder for change logs.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder for creating {@link ChangeLog}s.
+     */
+    public static final class Builder {
+
+        private String table = "flashlibs_changes";
+        private Duration interval = Duration.ofSeconds(1);
+        private Duration retention = Duration.ofHours(1);
+
+        private Builder() {}
+
+        /**
+         * Sets the name of the table storing changes, which is created if it
+         * does not exist. The default is {@code flashlibs_changes}.
+         */
+        public Builder table(String table) {
+            Preconditions.checkArgument(IDENTIFIER.matcher(table).matches(), "Table must be a valid identifier.");
+            this.table = table;
+            return this;
+        }
+
+        /**
+         * Sets the interval between polls for changes. The default is 1
+         * second.
+         */
+        public Builder interval(Duration interval) {
+            Preconditions.checkArgument(!interval.isNegative() && !interval.isZero(), "Interval must be positive.");
+            this.interval = interval;
+            return this;
+        }
+
+        /**
+         * Sets the time changes are kept before being deleted. The default is
+         * 1 hour.
+         */
+        public Builder retention(Duration retention) {
+            Preconditions.checkArgument(!retention.isNegative() && !retention.isZero(), "Retention must be positive.");
+            this.retention = retention;
+            return this;
+        }
+
+        /**
+         * Creates a ChangeLog from this builder for the given service,
+         * creating the table if it does not exist.
+         *
+         * @throws SQLException If a database error occurs
+         */
+        public ChangeLog build(DatabaseService service) throws SQLException {
+            return new ChangeLog(this, service);
+        }
+
+    }
+
+}
@@ -0,0 +1,214 @@
+package dev.flashlabs.flashlibs.database;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * Represents the conversion between a Java type and one or more database
+ * columns, which is used when binding statement parameters and reading
+ * results. Codecs are registered to a {@link CodecRegistry} through
+ * {@link DatabaseService.Builder#codec(Class, Codec)}.
+ *
+ * <p>Codecs with a width greater than 1 bind multiple consecutive parameters
+ * and read multiple consecutive columns, such as {@link #UUID_LONGS}. As a
+ * plain {@code null} argument has no type, it always binds a single parameter;
+ * use {@link #nullOf(Class)} to bind a null for such a type.</p>
+ */
+public interface Codec<T> {
+
+    /**
+     * Stores UUIDs as a 36 character string, such as a {@code CHAR(36)}
+     * column. By default, UUIDs are bound with
+     * {@link PreparedStatement#setObject(int, Object)}, which supports native
+     * {@code uuid} columns.
+     */
+    Codec<UUID> UUID_STRING = new Codec<UUID>() {
+
+        @Override
+        public void bind(PreparedStatement statement, int index, UUID value) throws SQLException {
+            statement.setString(index, value.toString());
+        }
+
+        @Override
+        @Nullable
+        public UUID read(ResultSet results, int index) throws SQLException {
+            String value = results.getString(index);
+            return value != null ? UUID.fromString(value) : null;
+        }
+
+    };
+
+    /**
+     * Stores UUIDs as 16 bytes, such as a {@code BINARY(16)} column.
+     */
+    Codec<UUID> UUID_BINARY = new Codec<UUID>() {
+
+        @Override
+        public void bind(PreparedStatement statement, int index, UUID value) throws SQLException {
+            statement.setBytes(index, ByteBuffer.allocate(16)
+                    .putLong(value.getMostSignificantBits())
+                    .putLong(value.getLeastSignificantBits())
+                    .array());
+        }
+
+        @Override
+        @Nullable
+        public UUID read(ResultSet results, int index) throws SQLException {
+            byte[] value = results.getBytes(index);
+            if (value == null) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(value);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        }
+
+    };
+
+    /**
+     * Stores UUIDs as two consecutive {@code BIGINT} columns, containing the
+     * most significant and least significant bits respectively.
+     */
+    Codec<UUID> UUID_LONGS = new Codec<UUID>() {
+
+        @Override
+        public void bind(PreparedStatement statement, int index, UUID value) throws SQLException {
+            statement.setLong(index, value.getMostSignificantBits());
+            statement.setLong(index + 1, value.getLeastSignificantBits());
+        }
+
+        @Override
+        @Nullable
+        public UUID read(ResultSet results, int index) throws SQLException {
+            long most = results.getLong(index);
+            return results.wasNull() ? null : new UUID(most, results.getLong(index + 1));
+        }
+
+        @Override
+        public int getWidth() {
+            return 2;
+        }
+
+    };
+
+    /**
+     * Stores instants as a {@link Timestamp}.
+     */
+    Codec<Instant> INSTANT_TIMESTAMP = new Codec<Instant>() {
+
+        @Override
+        public void bind(PreparedStatement statement, int index, Instant value) throws SQLException {
+            statement.setTimestamp(index, Timestamp.from(value));
+        }
+
+        @Override
+        @Nullable
+        public Instant read(ResultSet results, int index) throws SQLException {
+            Timestamp value = results.getTimestamp(index);
+            return value != null ? value.toInstant() : null;
+        }
+
+    };
+
+    /**
+     * Stores instants as milliseconds since the epoch in a {@code BIGINT}.
+     */
+    Codec<Instant> INSTANT_MILLIS = new Codec<Instant>() {
+
+        @Override
+        public void bind(PreparedStatement statement, int index, Instant value) throws SQLException {
+            statement.setLong(index, value.toEpochMilli());
+        }
+
+        @Override
+        @Nullable
+        public Instant read(ResultSet results, int index) throws SQLException {
+            long value = results.getLong(index);
+            return results.wasNull() ? null : Instant.ofEpochMilli(value);
+        }
+
+    };
+
+    /**
+     * Creates a codec storing enum constants by name.
+     */
+    static <E extends Enum<E>> Codec<E> ofName(Class<E> type) {
+        return new Codec<E>() {
+
+            @Override
+            public void bind(PreparedStatement statement, int index, E value) throws SQLException {
+                statement.setString(index, value.name());
+            }
+
+            @Override
+            @Nullable
+            public E read(ResultSet results, int index) throws SQLException {
+                String value = results.getString(index);
+                return value != null ? Enum.valueOf(type, value) : null;
+            }
+
+        };
+    }
+
+    /**
+     * Creates a codec storing enum constants by ordinal, which is compact but
+     * depends on the order of the constants.
+     */
+    static <E extends Enum<E>> Codec<E> ofOrdinal(Class<E> type) {
+        E[] constants = type.getEnumConstants();
+        return new Codec<E>() {
+
+            @Override
+            public void bind(PreparedStatement statement, int index, E value) throws SQLException {
+                statement.setInt(index, value.ordinal());
+            }
+
+            @Override
+            @Nullable
+            public E read(ResultSet results, int index) throws SQLException {
+                int value = results.getInt(index);
+                return results.wasNull() ? null : constants[value];
+            }
+
+        };
+    }
+
+    /**
+     * Returns an argument binding {@code NULL} to each parameter used by the
+     * codec for the given type, such as both columns of {@link #UUID_LONGS}.
+     */
+    static Object nullOf(Class<?> type) {
+        return new CodecRegistry.Null(type);
+    }
+
+    /**
+     * Binds the given non-null value to the parameters of the statement
+     * starting at the given index.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    void bind(PreparedStatement statement, int index, T value) throws SQLException;
+
+    /**
+     * Reads a value from the columns of the current row starting at the given
+     * index, returning null if the value is {@code NULL}.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    @Nullable
+    T read(ResultSet results, int index) throws SQLException;
+
+    /**
+     * Returns the number of parameters and columns used by this codec, which
+     * defaults to 1.
+     */
+    default int getWidth() {
+        return 1;
+    }
+
+}
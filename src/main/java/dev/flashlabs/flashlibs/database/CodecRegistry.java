@@ -0,0 +1,214 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Represents the {@link Codec}s used by a {@link DatabaseService} for binding
+ * statement parameters and reading results in {@link RowMapper#of(Class)}.
+ * Codecs are resolved once for each class, so binding a parameter uses the
+ * type-specific setter without any type checks. Types without a codec are bound
+ * with {@link PreparedStatement#setObject(int, Object)}.
+ *
+ * <p>By default, primitive wrappers, strings, byte arrays, and decimals use
+ * their specific setters and getters. Other types, including UUIDs, instants,
+ * and enums, are left to the driver so that native types such as PostgreSQL's
+ * {@code uuid} keep working; codecs for these are registered through
+ * {@link DatabaseService.Builder#codec(Class, Codec)}.</p>
+ */
+public final class CodecRegistry {
+
+    private static final ImmutableMap<Class<?>, Codec<?>> DEFAULTS = ImmutableMap.<Class<?>, Codec<?>>builder()
+            .put(String.class, of(PreparedStatement::setString, ResultSet::getString))
+            .put(Boolean.class, CodecRegistry.<Boolean>of(PreparedStatement::setBoolean, (r, i) -> {
+                boolean value = r.getBoolean(i);
+                return r.wasNull() ? null : value;
+            }))
+            .put(Byte.class, CodecRegistry.<Byte>of(PreparedStatement::setByte, (r, i) -> {
+                byte value = r.getByte(i);
+                return r.wasNull() ? null : value;
+            }))
+            .put(Short.class, CodecRegistry.<Short>of(PreparedStatement::setShort, (r, i) -> {
+                short value = r.getShort(i);
+                return r.wasNull() ? null : value;
+            }))
+            .put(Integer.class, CodecRegistry.<Integer>of(PreparedStatement::setInt, (r, i) -> {
+                int value = r.getInt(i);
+                return r.wasNull() ? null : value;
+            }))
+            .put(Long.class, CodecRegistry.<Long>of(PreparedStatement::setLong, (r, i) -> {
+                long value = r.getLong(i);
+                return r.wasNull() ? null : value;
+            }))
+            .put(Float.class, CodecRegistry.<Float>of(PreparedStatement::setFloat, (r, i) -> {
+                float value = r.getFloat(i);
+                return r.wasNull() ? null : value;
+            }))
+            .put(Double.class, CodecRegistry.<Double>of(PreparedStatement::setDouble, (r, i) -> {
+                double value = r.getDouble(i);
+                return r.wasNull() ? null : value;
+            }))
+            .put(byte[].class, of(PreparedStatement::setBytes, ResultSet::getBytes))
+            .put(BigDecimal.class, of(PreparedStatement::setBigDecimal, ResultSet::getBigDecimal))
+            .build();
+
+    /**
+     * The registry containing only the default codecs.
+     */
+    public static final CodecRegistry DEFAULT = new CodecRegistry(ImmutableMap.of());
+
+    private final ImmutableMap<Class<?>, Codec<?>> codecs;
+    private final ClassValue<Optional<Codec<?>>> resolved = new ClassValue<Optional<Codec<?>>>() {
+
+        @Override
+        protected Optional<Codec<?>> computeValue(Class<?> type) {
+            return Optional.ofNullable(resolve(type));
+        }
+
+    };
+
+    CodecRegistry(Map<Class<?>, Codec<?>> codecs) {
+        Map<Class<?>, Codec<?>> merged = Maps.newHashMap(DEFAULTS);
+        merged.putAll(codecs);
+        this.codecs = ImmutableMap.copyOf(merged);
+    }
+
+    /**
+     * Returns the codec for the given type, if present. Enum constants with a
+     * body use the codec registered for their enum.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<Codec<T>> get(Class<T> type) {
+        return (Optional<Codec<T>>) (Optional<?>) resolved.get(type);
+    }
+
+    /**
+     * Reads a value of the given type from the column at the given index using
+     * its codec, or {@link ResultSet#getObject(int, Class)} if there is no
+     * codec for the type.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    @Nullable
+    public <T> T read(ResultSet results, int index, Class<T> type) throws SQLException {
+        Optional<Codec<T>> codec = get(type);
+        return codec.isPresent() ? codec.get().read(results, index) : results.getObject(index, type);
+    }
+
+    /**
+     * Binds the given value to the statement starting at the given index and
+     * returns the number of parameters used. Null values use a single
+     * parameter, while nulls created with {@link Codec#nullOf(Class)} use the
+     * width of the codec for their type.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    @SuppressWarnings("unchecked")
+    int bind(PreparedStatement statement, int index, @Nullable Object value) throws SQLException {
+        if (value == null) {
+            statement.setObject(index, null);
+            return 1;
+        } else if (value instanceof Null) {
+            int width = getWidth(((Null) value).type);
+            for (int i = 0; i < width; i++) {
+                statement.setObject(index + i, null);
+            }
+            return width;
+        }
+        Codec<Object> codec = (Codec<Object>) resolved.get(value.getClass()).orElse(null);
+        if (codec == null) {
+            statement.setObject(index, value);
+            return 1;
+        }
+        codec.bind(statement, index, value);
+        return codec.getWidth();
+    }
+
+    /**
+     * Returns the number of columns used by the given type.
+     */
+    int getWidth(Class<?> type) {
+        return resolved.get(type).map(Codec::getWidth).orElse(1);
+    }
+
+    @Nullable
+    private Codec<?> resolve(Class<?> type) {
+        Codec<?> codec = codecs.get(type);
+        if (codec == null && !type.isEnum() && type.getSuperclass() != null && type.getSuperclass().isEnum()) {
+            codec = codecs.get(type.getSuperclass());
+        }
+        return codec;
+    }
+
+    private static <T> Codec<T> of(Binder<T> binder, Reader<T> reader) {
+        return new Codec<T>() {
+
+            @Override
+            public void bind(PreparedStatement statement, int index, T value) throws SQLException {
+                binder.bind(statement, index, value);
+            }
+
+            @Override
+            @Nullable
+            public T read(ResultSet results, int index) throws SQLException {
+                return reader.read(results, index);
+            }
+
+        };
+    }
+
+    /**
+     * A null argument for a specific type.
+     *
+     * @see Codec#nullOf(Class)
+     */
+    static final class Null {
+
+        private final Class<?> type;
+
+        Null(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Null && ((Null) obj).type == type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(type);
+        }
+
+        @Override
+        public String toString() {
+            return "NULL(" + type.getSimpleName() + ")";
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface Binder<T> {
+
+        void bind(PreparedStatement statement, int index, T value) throws SQLException;
+
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+
+        @Nullable
+        T read(ResultSet results, int index) throws SQLException;
+
+    }
+
+}
@@ -1,29 +1,127 @@
 package dev.flashlabs.flashlibs.database;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Represents a connection to the database. This class implements
  * {@link AutoCloseable}, which can be used with try-with-resources.
+ *
+ * <p>Statements used by the methods of this connection are cached by their SQL
+ * in a bounded, least-recently-used cache and closed along with this
+ * connection or once evicted. A cached statement whose results are still open,
+ * such as while iterating over them, is not reused; another statement is
+ * prepared instead, so nested queries with the same SQL do not close the
+ * results of the outer query. Statements returned by
+ * {@link #getStatement(String)} are never shared.</p>
  */
 public class Connection implements AutoCloseable {
     
     protected final java.sql.Connection connection;
+    private final DatabaseService service;
+    private final Map<String, Statement> statements;
+    private final List<Statement> unshared = Lists.newArrayList();
+    private final List<Statement> temporary = Lists.newArrayList();
+    private final Runnable release;
+    private long hits = 0;
+    private long misses = 0;
+
+    Connection(DatabaseService service, java.sql.Connection connection) {
+        this(service, connection, () -> {});
+    }
 
-    Connection(java.sql.Connection connection) {
+    /**
+     * Creates a connection which runs the given action once closed, which is
+     * used to track the connections open to a replica.
+     */
+    Connection(DatabaseService service, java.sql.Connection connection, Runnable release) {
+        this.service = service;
         this.connection = connection;
+        this.release = release;
+        int capacity = service.getStatementCapacity();
+        statements = new LinkedHashMap<String, Statement>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+                if (size() > capacity) {
+                    try {
+                        eldest.getValue().close();
+                    } catch (SQLException ignored) {
+                        //The statement is discarded either way.
+                    }
+                    return true;
+                }
+                return false;
+            }
+
+        };
     }
 
     /**
      * Creates a reusable statement prepared by the connection that allows for
-     * parameters to be defined.
+     * parameters to be defined. The statement is not shared with any other
+     * caller, so its results remain open until it is executed again or this
+     * connection is closed. If the service has a query timeout, it is applied
+     * to the statement.
      *
      * @throws SQLException If a database error occurs
      * @see java.sql.Connection#prepareStatement(String)
+     * @see DatabaseService.Builder#queryTimeout(java.time.Duration)
      */
     public final Statement getStatement(String sql) throws SQLException {
-        return new Statement(connection.prepareStatement(sql));
+        Statement statement = prepare(sql);
+        unshared.add(statement);
+        return statement;
+    }
+
+    /**
+     * Returns the cached statement for the given SQL, preparing and caching
+     * it if absent. If the cached statement still has open results or the
+     * cache is disabled, a temporary statement is prepared instead, which is
+     * closed once its results are closed and another temporary statement is
+     * needed.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    final Statement getCachedStatement(String sql) throws SQLException {
+        Statement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed() && !statement.isBusy()) {
+            hits++;
+            return statement;
+        }
+        if (service.getStatementCapacity() > 0 && (statement == null || statement.isClosed())) {
+            statement = prepare(sql);
+            statements.put(sql, statement);
+            return statement;
+        }
+        for (Iterator<Statement> iterator = temporary.iterator(); iterator.hasNext(); ) {
+            Statement previous = iterator.next();
+            if (!previous.isBusy()) {
+                previous.close();
+                iterator.remove();
+            }
+        }
+        statement = prepare(sql);
+        temporary.add(statement);
+        return statement;
+    }
+
+    private Statement prepare(String sql) throws SQLException {
+        misses++;
+        PreparedStatement prepared = connection.prepareStatement(sql);
+        if (service.getQueryTimeout() > 0) {
+            prepared.setQueryTimeout(service.getQueryTimeout());
+        }
+        return new Statement(this, sql, prepared);
     }
 
     /**
@@ -33,7 +131,7 @@ public class Connection implements AutoCloseable {
      * @throws SQLException If a database error occurs
      */
     public final void update(String sql, Object... args) throws SQLException {
-        getStatement(sql).setParams(args).update();
+        getCachedStatement(sql).setParams(args).update();
     }
 
     /**
@@ -43,17 +141,156 @@ public class Connection implements AutoCloseable {
      * @throws SQLException If a database error occurs
      */
     public final ResultSet query(String sql, Object... args) throws SQLException {
-        return getStatement(sql).setParams(args).query();
+        return getCachedStatement(sql).setParams(args).query();
+    }
+
+    /**
+     * Executes an SQL statement with the given arguments as a database query
+     * and returns the retrieved rows mapped using the given mapper.
+     *
+     * @throws SQLException If a database error occurs
+     * @see RowMapper
+     */
+    public final <T> List<T> query(RowMapper<T> mapper, String sql, Object... args) throws SQLException {
+        return getCachedStatement(sql).setParams(args).query(mapper);
+    }
+
+    /**
+     * Executes an SQL statement with the given arguments as a database query
+     * and returns the retrieved results materialized into a table.
+     *
+     * @throws SQLException If a database error occurs
+     * @see ResultTable
+     */
+    public final ResultTable table(String sql, Object... args) throws SQLException {
+        return getCachedStatement(sql).setParams(args).table();
+    }
+
+    /**
+     * Executes an SQL statement as a batch of database modifications for each
+     * of the given arguments. The batch is split into chunks of the service's
+     * batch size, and the update counts for each chunk are returned in order.
+     * This does not manage transactions; see
+     * {@link DatabaseService#batch(String, Iterable)}.
+     *
+     * @throws SQLException If a database error occurs
+     * @see Statement#addBatch(Object...)
+     */
+    public final List<int[]> batch(String sql, Iterable<Object[]> args) throws SQLException {
+        Statement statement = getCachedStatement(sql);
+        List<int[]> counts = Lists.newArrayList();
+        int size = 0;
+        try {
+            for (Object[] arg : args) {
+                statement.addBatch(arg);
+                if (++size == service.getBatchSize()) {
+                    counts.add(statement.executeBatch());
+                    size = 0;
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            statement.clearBatch();
+            throw e;
+        }
+        if (size > 0) {
+            counts.add(statement.executeBatch());
+        }
+        return counts;
+    }
+
+    /**
+     * Executes an SQL statement with the given arguments as a database query
+     * and returns a stream over the retrieved rows, fetching rows in chunks of
+     * the service's fetch size. The stream should be closed after use, such as
+     * with try-with-resources.
+     *
+     * @throws SQLException If a database error occurs
+     * @see Statement#stream()
+     */
+    public final Stream<ResultSet> stream(String sql, Object... args) throws SQLException {
+        return getCachedStatement(sql).setFetchSize(service.getFetchSize()).setParams(args).stream();
+    }
+
+    /**
+     * Executes an SQL statement with the given arguments as a database query
+     * and returns a stream over the retrieved rows mapped using the given
+     * mapper, as in {@link #stream(String, Object...)}.
+     *
+     * @throws SQLException If a database error occurs
+     * @see RowMapper
+     */
+    public final <T> Stream<T> stream(RowMapper<T> mapper, String sql, Object... args) throws SQLException {
+        return getCachedStatement(sql).setFetchSize(service.getFetchSize()).setParams(args).stream(mapper);
+    }
+
+    DatabaseService getService() {
+        return service;
+    }
+
+    /**
+     * Called before a statement of this connection is executed.
+     */
+    void executing() {}
+
+    /**
+     * Notifies the service that the given SQL statement was executed as a
+     * modification, invalidating any affected cached results and recording
+     * the change in the service's {@link ChangeLog}, if any, using this
+     * connection.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    void modified(String sql) throws SQLException {
+        invalidate(sql);
+        ChangeLog changes = service.getChangeLog();
+        if (changes != null) {
+            changes.recordModification(this, sql);
+        }
+    }
+
+    /**
+     * Invalidates any cached results affected by the given SQL statement.
+     */
+    final void invalidate(String sql) {
+        service.getQueryCache().ifPresent(c -> c.invalidate(sql));
+    }
+
+    /**
+     * Returns the number of times a statement was reused from the cache.
+     */
+    public final long getStatementHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of times a statement had to be prepared.
+     */
+    public final long getStatementMisses() {
+        return misses;
     }
 
     /**
-     * Closes this connection.
+     * Closes this connection, including all statements it created.
      *
      * @throws SQLException If a database error occurs
      */
     @Override
     public void close() throws SQLException {
-        connection.close();
+        service.recordStatements(hits, misses);
+        try {
+            for (Statement statement : Iterables.concat(statements.values(), temporary, unshared)) {
+                statement.close();
+            }
+        } finally {
+            statements.clear();
+            temporary.clear();
+            unshared.clear();
+            try {
+                connection.close();
+            } finally {
+                release.run();
+            }
+        }
     }
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,331 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.Sets;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+/**
+ * Represents a fixed-size pool of connections for a {@link DataSource} that
+ * does not provide pooling itself, such as a plain SQLite or H2 driver. Pools
+ * are created and owned by a {@link DatabaseService} through
+ * {@link DatabaseService.Builder#pool(int)}.
+ *
+ * <p>Connections are borrowed without locking, and connections that have been
+ * idle for a while are validated before they are returned. When a connection
+ * is returned, any open transaction is rolled back and session state changed
+ * by the borrower, such as the transaction isolation, read-only mode, catalog,
+ * or schema, is restored. If leak detection is enabled, connections held
+ * longer than the threshold are reported along with the stack trace of where
+ * they were borrowed.</p>
+ *
+ * <p>Note that Sponge's {@code SqlService} already provides pooled sources, so
+ * this pool is not necessary for sources obtained through it.</p>
+ */
+public final class ConnectionPool implements AutoCloseable {
+
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    private final DatabaseService service;
+    private final DataSource source;
+    private final int size;
+    private final long timeout;
+    private final long leakThreshold;
+    private final Semaphore permits;
+    private final Deque<Pooled> idle = new ConcurrentLinkedDeque<>();
+    private final Set<Pooled> active = Sets.newConcurrentHashSet();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waitTime = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    @Nullable private final ScheduledFuture<?> task;
+    private volatile long validationInterval = TimeUnit.SECONDS.toNanos(30);
+    private volatile boolean closed = false;
+
+    ConnectionPool(DatabaseService service, DataSource source, int size, Duration timeout, Duration leakThreshold) {
+        this.service = service;
+        this.source = source;
+        this.size = size;
+        this.timeout = timeout.toNanos();
+        this.leakThreshold = leakThreshold.toNanos();
+        permits = new Semaphore(size);
+        task = leakThreshold.isZero() ? null : service.schedule(leakThreshold.dividedBy(2), () -> {
+            detectLeaks();
+            return null;
+        });
+    }
+
+    /**
+     * Borrows a connection from this pool, opening a new connection if no idle
+     * connections are available and the pool is not full. Closing the returned
+     * connection returns it to the pool.
+     *
+     * @throws SQLTransientConnectionException If no connection is available
+     *     within the timeout
+     * @throws SQLException If a database access error occurs
+     */
+    java.sql.Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException("Timed out waiting for a pooled connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a pooled connection.", e);
+        }
+        try {
+            Pooled pooled;
+            while ((pooled = idle.pollFirst()) != null && !validate(pooled)) {
+                discard(pooled);
+            }
+            if (pooled == null) {
+                java.sql.Connection connection = source.getConnection();
+                try {
+                    pooled = new Pooled(connection);
+                } catch (SQLException | RuntimeException e) {
+                    connection.close();
+                    throw e;
+                }
+                open.incrementAndGet();
+            }
+            long now = System.nanoTime();
+            waitTime.add(now - start);
+            borrows.increment();
+            pooled.borrowed = now;
+            pooled.origin = leakThreshold > 0 ? new Throwable("Connection borrowed by " + Thread.currentThread().getName()) : null;
+            pooled.reported = false;
+            active.add(pooled);
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Validates connections that have been idle longer than the validation
+     * interval, which detects connections closed by the database.
+     */
+    private boolean validate(Pooled pooled) {
+        try {
+            return System.nanoTime() - pooled.returned < validationInterval || pooled.connection.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sets the time a connection may be idle before it is validated, which is
+     * 30 seconds by default.
+     */
+    void setValidationInterval(Duration interval) {
+        validationInterval = interval.toNanos();
+    }
+
+    private void release(Pooled pooled) {
+        active.remove(pooled);
+        try {
+            if (closed || pooled.connection.isClosed()) {
+                discard(pooled);
+            } else {
+                pooled.reset();
+                pooled.returned = System.nanoTime();
+                pooled.origin = null;
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(Pooled pooled) {
+        open.decrementAndGet();
+        try {
+            pooled.connection.close();
+        } catch (SQLException ignored) {
+            //The connection is unusable either way.
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.nanoTime();
+        for (Pooled pooled : active) {
+            Throwable origin = pooled.origin;
+            if (!pooled.reported && origin != null && now - pooled.borrowed > leakThreshold) {
+                pooled.reported = true;
+                leaks.increment();
+                service.getLogger().warn("Connection has been held for "
+                        + TimeUnit.NANOSECONDS.toMillis(now - pooled.borrowed) + "ms, which may be a leak.", origin);
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of connections in this pool.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of connections currently borrowed.
+     */
+    public int getActive() {
+        return active.size();
+    }
+
+    /**
+     * Returns the number of open connections available to be borrowed.
+     */
+    public int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * Returns the number of open connections, both active and idle.
+     */
+    public int getOpen() {
+        return open.get();
+    }
+
+    /**
+     * Returns the number of threads waiting to borrow a connection.
+     */
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Returns the total number of connections borrowed.
+     */
+    public long getBorrows() {
+        return borrows.sum();
+    }
+
+    /**
+     * Returns the total time spent waiting to borrow connections, including
+     * opening new connections.
+     */
+    public Duration getWaitTime() {
+        return Duration.ofNanos(waitTime.sum());
+    }
+
+    /**
+     * Returns the total number of connections reported as potential leaks.
+     */
+    public long getLeaks() {
+        return leaks.sum();
+    }
+
+    /**
+     * Closes this pool and all idle connections. Active connections are closed
+     * once they are returned. This pool is closed automatically when the
+     * service is closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+        for (Iterator<Pooled> iterator = idle.iterator(); iterator.hasNext(); ) {
+            Pooled pooled = iterator.next();
+            iterator.remove();
+            discard(pooled);
+        }
+    }
+
+    /**
+     * A physical connection managed by this pool.
+     */
+    private final class Pooled {
+
+        private final java.sql.Connection connection;
+        private final int isolation;
+        private final boolean readOnly;
+        @Nullable private final String catalog;
+        @Nullable private final String schema;
+        @Nullable private volatile PooledConnection lease = null;
+        private volatile long borrowed;
+        private volatile long returned = System.nanoTime();
+        @Nullable private volatile Throwable origin;
+        private volatile boolean reported;
+
+        private Pooled(java.sql.Connection connection) throws SQLException {
+            this.connection = connection;
+            isolation = connection.getTransactionIsolation();
+            readOnly = connection.isReadOnly();
+            catalog = connection.getCatalog();
+            String schema;
+            try {
+                schema = connection.getSchema();
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                //Drivers before JDBC 4.1 do not support schemas.
+                schema = null;
+            }
+            this.schema = schema;
+        }
+
+        /**
+         * Creates a lease of the physical connection for a single borrow,
+         * which returns the connection to the pool when closed and rejects
+         * further use afterwards.
+         */
+        private java.sql.Connection lease() {
+            lease = new PooledConnection(connection, () -> release(this));
+            return lease;
+        }
+
+        /**
+         * Restores the session state of the connection after a borrow,
+         * rolling back any open transaction and restoring the state the
+         * connection was opened with if the lease changed it.
+         *
+         * @throws SQLException If a database error occurs
+         */
+        private void reset() throws SQLException {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            PooledConnection lease = this.lease;
+            if (lease != null && lease.isDirty()) {
+                if (connection.getTransactionIsolation() != isolation) {
+                    connection.setTransactionIsolation(isolation);
+                }
+                if (connection.isReadOnly() != readOnly) {
+                    connection.setReadOnly(readOnly);
+                }
+                if (catalog != null && !catalog.equals(connection.getCatalog())) {
+                    connection.setCatalog(catalog);
+                }
+                if (schema != null && !schema.equals(connection.getSchema())) {
+                    connection.setSchema(schema);
+                }
+            }
+            connection.clearWarnings();
+            this.lease = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,187 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link RowMapper} creating objects through a constructor. The constructor
+ * is compiled into a single {@link MethodHandle} for each set of column
+ * indices, which reads every column with the getter or {@link Codec} for the
+ * parameter type.
+ *
+ * @see RowMapper#of(Class)
+ * @see RowMapper#of(Class, String...)
+ */
+final class ConstructorMapper<T> implements RowMapper<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final ImmutableMap<Class<?>, MethodHandle> GETTERS;
+    private static final MethodHandle READ;
+
+    static {
+        try {
+            ImmutableMap.Builder<Class<?>, MethodHandle> getters = ImmutableMap.builder();
+            for (Object[] getter : new Object[][] {
+                    {boolean.class, "getBoolean"}, {byte.class, "getByte"}, {short.class, "getShort"},
+                    {int.class, "getInt"}, {long.class, "getLong"}, {float.class, "getFloat"},
+                    {double.class, "getDouble"}, {Date.class, "getDate"}, {Time.class, "getTime"},
+                    {Timestamp.class, "getTimestamp"}}) {
+                Class<?> type = (Class<?>) getter[0];
+                getters.put(type, LOOKUP.findVirtual(ResultSet.class, (String) getter[1], MethodType.methodType(type, int.class)));
+            }
+            GETTERS = getters.build();
+            READ = LOOKUP.findVirtual(Codec.class, "read", MethodType.methodType(Object.class, ResultSet.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Class<T> type;
+    @Nullable private final String[] columns;
+    private final Map<List<Object>, Compiled<T>> compiled = Maps.newConcurrentMap();
+
+    ConstructorMapper(Class<T> type, @Nullable String[] columns) {
+        this.type = type;
+        this.columns = columns;
+    }
+
+    @Override
+    public T map(ResultSet results) throws SQLException {
+        return bind(results.getMetaData(), CodecRegistry.DEFAULT).map(results);
+    }
+
+    @Override
+    public RowMapper<T> bind(ResultSetMetaData metadata, CodecRegistry codecs) throws SQLException {
+        if (columns != null) {
+            int[] indices = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                indices[i] = findColumn(metadata, columns[i]);
+            }
+            return compiled.computeIfAbsent(ImmutableList.of(codecs, Ints.asList(indices)), k -> compile(codecs, indices, indices.length));
+        } else {
+            int count = metadata.getColumnCount();
+            return compiled.computeIfAbsent(ImmutableList.of(codecs, count), k -> compile(codecs, null, count));
+        }
+    }
+
+    private static int findColumn(ResultSetMetaData metadata, String column) throws SQLException {
+        for (int i = 1; i <= metadata.getColumnCount(); i++) {
+            if (metadata.getColumnLabel(i).equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        throw new SQLException("Column " + column + " is not present in the results.");
+    }
+
+    /**
+     * Compiles the constructor of the type matching the given number of
+     * columns into a handle accepting a {@link ResultSet}. If no indices are
+     * given, parameters read consecutive columns according to the width of
+     * their codec. Named columns only support codecs with a width of 1, as
+     * the remaining columns of a wider codec are not named.
+     *
+     * @throws IllegalArgumentException If no single constructor matches, or
+     *     a named column has a codec with a width greater than 1
+     */
+    private Compiled<T> compile(CodecRegistry codecs, @Nullable int[] indices, int count) {
+        Constructor<?> constructor = null;
+        for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+            int width = indices != null ? candidate.getParameterCount()
+                    : Arrays.stream(candidate.getParameterTypes()).mapToInt(codecs::getWidth).sum();
+            if (width == count) {
+                if (constructor != null) {
+                    throw new IllegalArgumentException("Multiple constructors of " + type.getName() + " match " + count + " columns.");
+                }
+                constructor = candidate;
+            }
+        }
+        if (constructor == null) {
+            throw new IllegalArgumentException("No constructor of " + type.getName() + " matches " + count + " columns.");
+        }
+        if (indices != null) {
+            for (Class<?> parameter : constructor.getParameterTypes()) {
+                if (codecs.getWidth(parameter) != 1) {
+                    throw new IllegalArgumentException("Parameter type " + parameter.getName() + " of " + type.getName()
+                            + " uses " + codecs.getWidth(parameter) + " columns and cannot be read from a named column.");
+                }
+            }
+        }
+        try {
+            constructor.setAccessible(true);
+            MethodHandle handle = LOOKUP.unreflectConstructor(constructor);
+            Class<?>[] parameters = constructor.getParameterTypes();
+            MethodHandle[] getters = new MethodHandle[parameters.length];
+            for (int i = 0, index = 1; i < parameters.length; index += codecs.getWidth(parameters[i++])) {
+                getters[i] = MethodHandles.insertArguments(getter(codecs, parameters[i]), 1, indices != null ? indices[i] : index);
+            }
+            handle = MethodHandles.filterArguments(handle, 0, getters);
+            handle = MethodHandles.permuteArguments(handle, MethodType.methodType(type, ResultSet.class), new int[parameters.length]);
+            return new Compiled<>(handle.asType(MethodType.methodType(Object.class, ResultSet.class)));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalArgumentException("Unable to compile constructor of " + type.getName() + ".", e);
+        }
+    }
+
+    /**
+     * Returns a handle of type {@code (ResultSet, int)type} reading a column,
+     * which uses the primitive getter for primitive types and otherwise the
+     * codec for the type if present.
+     */
+    private static MethodHandle getter(CodecRegistry codecs, Class<?> type) throws ReflectiveOperationException {
+        Optional<? extends Codec<?>> codec = type.isPrimitive() ? Optional.empty() : codecs.get(type);
+        if (codec.isPresent()) {
+            return READ.bindTo(codec.get()).asType(MethodType.methodType(type, ResultSet.class, int.class));
+        }
+        MethodHandle getter = GETTERS.get(type);
+        if (getter == null) {
+            getter = MethodHandles.insertArguments(LOOKUP.findVirtual(ResultSet.class, "getObject",
+                    MethodType.methodType(Object.class, int.class, Class.class)), 2, type);
+            getter = getter.asType(MethodType.methodType(type, ResultSet.class, int.class));
+        }
+        return getter;
+    }
+
+    /**
+     * A mapper invoking a compiled constructor handle.
+     */
+    private static final class Compiled<T> implements RowMapper<T> {
+
+        private final MethodHandle handle;
+
+        private Compiled(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T map(ResultSet results) throws SQLException {
+            try {
+                return (T) (Object) handle.invokeExact(results);
+            } catch (SQLException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new SQLException("Failed to construct row.", t);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,260 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Represents a loader which combines lookups of individual keys into a single
+ * query, such as when many players join at once. Keys requested within a short
+ * window are loaded together with a query of the form
+ * {@code SELECT ... WHERE id IN (?)}, where the {@code IN (?)} is expanded to
+ * a parameter for each key. Requests for a key that is already being loaded
+ * share the same result.
+ *
+ * <p>The number of parameters is rounded up to a power of two by repeating
+ * the last key, so that only a few distinct statements are prepared. Mapped
+ * rows are matched to keys with the key function, which must return keys
+ * equal to the requested keys.</p>
+ */
+public final class DataLoader<K, V> {
+
+    private static final Pattern IN = Pattern.compile("\\bIN\\s*\\(\\s*\\?\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    private final DatabaseService service;
+    private final String prefix;
+    private final String suffix;
+    private final RowMapper<V> mapper;
+    private final Function<V, K> key;
+    private final Duration window;
+    private final int size;
+    private final ConcurrentMap<K, CompletableFuture<Optional<V>>> inflight = Maps.newConcurrentMap();
+    private final Map<Integer, String> statements = Maps.newConcurrentMap();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final Object lock = new Object();
+    private List<K> pending = Lists.newArrayList();
+    private boolean scheduled = false;
+
+    private DataLoader(Builder<K, V> builder, DatabaseService service) {
+        this.service = service;
+        Matcher matcher = IN.matcher(builder.sql);
+        Preconditions.checkArgument(matcher.find(), "SQL must contain IN (?).");
+        prefix = builder.sql.substring(0, matcher.start()) + "IN (";
+        suffix = ")" + builder.sql.substring(matcher.end());
+        Preconditions.checkArgument(!matcher.find(), "SQL must contain IN (?) only once.");
+        mapper = builder.mapper;
+        key = builder.key;
+        window = builder.window;
+        size = builder.size;
+    }
+
+    /**
+     * Loads the value for the given key, which is empty if no row matches the
+     * key. The key is loaded together with other keys requested within the
+     * window, or immediately once the batch size is reached.
+     */
+    public CompletableFuture<Optional<V>> load(K key) {
+        requests.increment();
+        CompletableFuture<Optional<V>> future = new CompletableFuture<>();
+        CompletableFuture<Optional<V>> existing = inflight.putIfAbsent(key, future);
+        if (existing != null) {
+            deduplicated.increment();
+            return existing;
+        }
+        List<K> batch = null;
+        boolean schedule = false;
+        synchronized (lock) {
+            pending.add(key);
+            if (pending.size() >= size) {
+                batch = pending;
+                pending = Lists.newArrayList();
+            } else if (!scheduled) {
+                scheduled = true;
+                schedule = true;
+            }
+        }
+        if (batch != null) {
+            List<K> keys = batch;
+            try {
+                service.submit(() -> {
+                    execute(keys);
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                fail(keys, e);
+            }
+        } else if (schedule) {
+            try {
+                service.submit(window, () -> {
+                    execute(drain());
+                    return null;
+                }).exceptionally(t -> {
+                    fail(drain(), t);
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                fail(drain(), e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Loads the values for all of the given keys as in {@link #load(Object)},
+     * returning a map of the keys that matched a row.
+     */
+    public CompletableFuture<Map<K, V>> loadAll(Iterable<K> keys) {
+        Map<K, CompletableFuture<Optional<V>>> futures = Maps.newLinkedHashMap();
+        keys.forEach(k -> futures.put(k, load(k)));
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<K, V> values = Maps.newLinkedHashMap();
+            futures.forEach((k, f) -> f.join().ifPresent(value -> values.put(k, value)));
+            return values;
+        });
+    }
+
+    private List<K> drain() {
+        synchronized (lock) {
+            scheduled = false;
+            List<K> batch = pending;
+            pending = Lists.newArrayList();
+            return batch;
+        }
+    }
+
+    /**
+     * Executes a single query for the given keys and completes their futures.
+     */
+    private void execute(List<K> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        batches.increment();
+        int count = keys.size() == 1 ? 1 : Math.min(Integer.highestOneBit(keys.size() - 1) << 1, size);
+        Object[] args = new Object[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = keys.get(Math.min(i, keys.size() - 1));
+        }
+        String sql = statements.computeIfAbsent(count, c -> prefix + Strings.repeat("?, ", c - 1) + "?" + suffix);
+        Map<K, V> values = Maps.newHashMap();
+        try {
+            for (V value : service.query(mapper, sql, args)) {
+                values.putIfAbsent(key.apply(value), value);
+            }
+        } catch (Exception e) {
+            fail(keys, e);
+            return;
+        }
+        for (K k : keys) {
+            CompletableFuture<Optional<V>> future = inflight.remove(k);
+            if (future != null) {
+                future.complete(Optional.ofNullable(values.get(k)));
+            }
+        }
+    }
+
+    private void fail(List<K> keys, Throwable t) {
+        for (K k : keys) {
+            CompletableFuture<Optional<V>> future = inflight.remove(k);
+            if (future != null) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * Returns the total number of keys requested.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns the total number of requests that shared the result of a key
+     * already being loaded.
+     */
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    /**
+     * Returns the total number of queries executed.
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * Creates a new builder for loaders executing the given query, which must
+     * contain {@code IN (?)} once, and matching mapped rows to keys with the
+     * given function.
+     */
+    public static <K, V> Builder<K, V> builder(String sql, RowMapper<V> mapper, Function<V, K> key) {
+        return new Builder<>(sql, mapper, key);
+    }
+
+    /**
+     * A builder for creating {@link DataLoader}s.
+     */
+    public static final class Builder<K, V> {
+
+        private final String sql;
+        private final RowMapper<V> mapper;
+        private final Function<V, K> key;
+        private Duration window = Duration.ofMillis(5);
+        private int size = 128;
+
+        private Builder(String sql, RowMapper<V> mapper, Function<V, K> key) {
+            this.sql = sql;
+            this.mapper = mapper;
+            this.key = key;
+        }
+
+        /**
+         * Sets the time to wait for additional keys after the first key of a
+         * batch is requested. The default is 5 milliseconds.
+         */
+        public Builder<K, V> window(Duration window) {
+            Preconditions.checkArgument(!window.isNegative(), "Window must not be negative.");
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of keys loaded by a single query, which
+         * starts the query immediately once reached. The default is 128.
+         */
+        public Builder<K, V> size(int size) {
+            Preconditions.checkArgument(size > 0, "Size must be positive.");
+            this.size = size;
+            return this;
+        }
+
+        /**
+         * Creates a DataLoader from this builder for the given service.
+         *
+         * @throws IllegalArgumentException If the SQL does not contain
+         *     {@code IN (?)} exactly once
+         */
+        public DataLoader<K, V> build(DatabaseService service) {
+            return new DataLoader<>(this, service);
+        }
+
+    }
+
+}
@@ -0,0 +1,218 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Records statistics for the statements executed through a
+ * {@link DatabaseService}, including call counts, error counts, and latency
+ * histograms for each statement as well as the time taken to acquire
+ * connections. Statements are grouped by their normalized SQL, which replaces
+ * literals with {@code ?} and collapses lists of parameters.
+ *
+ * <p>Recording only uses atomic counters, and the normalized form of each SQL
+ * string is cached, so the overhead for each statement is minimal. If a slow
+ * query threshold is configured, statements exceeding the threshold are logged
+ * along with their parameters and the calling thread.</p>
+ *
+ * @see DatabaseService#getMetrics()
+ */
+public final class DatabaseMetrics {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER = Pattern.compile("(?<![\\w$.])-?\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+    private final Logger logger;
+    private final long threshold;
+    private final ConcurrentMap<String, StatementMetrics> statements = Maps.newConcurrentMap();
+    private final LoadingCache<String, StatementMetrics> cache;
+    private final Histogram acquisition = new Histogram();
+
+    DatabaseMetrics(Logger logger, Duration threshold) {
+        this.logger = logger;
+        this.threshold = threshold.isZero() ? Long.MAX_VALUE : threshold.toNanos();
+        cache = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .build(sql -> statements.computeIfAbsent(normalize(sql), StatementMetrics::new));
+    }
+
+    /**
+     * Normalizes the given SQL by replacing literals with parameters and
+     * collapsing whitespace and lists of parameters.
+     */
+    static String normalize(String sql) {
+        String normalized = STRING.matcher(sql).replaceAll("?");
+        normalized = NUMBER.matcher(normalized).replaceAll("?");
+        normalized = LIST.matcher(normalized).replaceAll("(?)");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /**
+     * Records the execution of a statement, logging the statement if the time
+     * exceeds the slow query threshold.
+     */
+    void record(String sql, @Nullable Object[] args, long nanos, boolean error) {
+        StatementMetrics statement = cache.get(sql);
+        statement.calls.increment();
+        if (error) {
+            statement.errors.increment();
+        }
+        statement.latency.record(nanos);
+        if (nanos >= threshold) {
+            logger.warn("Slow query took {}ms on thread {}: {} {}", TimeUnit.NANOSECONDS.toMillis(nanos),
+                    Thread.currentThread().getName(), sql, args != null ? Arrays.deepToString(args) : "[]");
+        }
+    }
+
+    /**
+     * Records the time taken to acquire a connection.
+     */
+    void recordAcquisition(long nanos) {
+        acquisition.record(nanos);
+    }
+
+    /**
+     * Returns the metrics of all recorded statements keyed by normalized SQL.
+     */
+    public ImmutableMap<String, StatementMetrics> getStatements() {
+        return ImmutableMap.copyOf(statements);
+    }
+
+    /**
+     * Returns the histogram of time taken to acquire connections.
+     */
+    public Histogram getAcquisition() {
+        return acquisition;
+    }
+
+    /**
+     * Clears all recorded statistics.
+     */
+    public void reset() {
+        statements.clear();
+        cache.invalidateAll();
+        acquisition.reset();
+    }
+
+    /**
+     * Represents the metrics for all statements with the same normalized SQL.
+     */
+    public static final class StatementMetrics {
+
+        private final String sql;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final Histogram latency = new Histogram();
+
+        private StatementMetrics(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public Histogram getLatency() {
+            return latency;
+        }
+
+    }
+
+    /**
+     * Represents a histogram of durations with buckets of increasing powers of
+     * two in microseconds, which bounds the error of percentiles to a factor
+     * of two.
+     */
+    public static final class Histogram {
+
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram() {}
+
+        void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1));
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            total.reset();
+            max.reset();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public Duration getTotal() {
+            return Duration.ofNanos(total.sum());
+        }
+
+        public Duration getMean() {
+            long count = getCount();
+            return count == 0 ? Duration.ZERO : Duration.ofNanos(total.sum() / count);
+        }
+
+        public Duration getMax() {
+            return Duration.ofNanos(max.get());
+        }
+
+        /**
+         * Returns an upper bound of the given percentile, between 0 and 100,
+         * of the recorded durations.
+         */
+        public Duration getPercentile(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            long target = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target && seen > 0) {
+                    return Duration.ofNanos(Math.min(TimeUnit.MICROSECONDS.toNanos(1L << i), getMax().toNanos()));
+                }
+            }
+            return Duration.ZERO;
+        }
+
+    }
+
+}
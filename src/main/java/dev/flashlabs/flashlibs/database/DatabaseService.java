@@ -1,11 +1,49 @@
 package dev.flashlabs.flashlibs.database;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.spongepowered.api.Sponge;
+import org.spongepowered.api.plugin.PluginContainer;
 import org.spongepowered.api.service.sql.SqlService;
 
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
 import javax.sql.rowset.RowSetProvider;
 
 /**
@@ -14,20 +52,93 @@ import javax.sql.rowset.RowSetProvider;
  * service provides methods for directly executing single SQL statements and
  * methods for obtaining connections for multiple SQL statements or managing
  * database transactions.
+ *
+ * <p>Asynchronous variants of the statement methods are executed on a bounded
+ * worker pool owned by this service, which is configured through the
+ * {@link Builder}. The pool should be shut down with {@link #close()} when the
+ * service is no longer used, such as when the server is stopping.</p>
+ *
+ * <p>If replica sources are configured, queries and streams are executed on a
+ * replica while modifications and transactions are executed on the primary
+ * source. Reads can be pinned to the primary with {@link #pin()}.</p>
  */
-public final class DatabaseService {
+public final class DatabaseService implements AutoCloseable {
+
+    @Nullable private static volatile RowSetFactory factory = null;
 
     private final DataSource source;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor scheduler;
+    @Nullable private final Executor sync;
+    private final Logger logger;
+    private final Set<AutoCloseable> resources = Sets.newConcurrentHashSet();
+    @Nullable private final ConnectionPool pool;
+    @Nullable private final ReplicaSet replicas;
+    private final ThreadLocal<int[]> pins = ThreadLocal.withInitial(() -> new int[1]);
+    @Nullable private final QueryCache cache;
+    @Nullable private volatile ChangeLog changes = null;
+    private final DatabaseMetrics metrics;
+    private final CodecRegistry codecs;
+    @Nullable private volatile Dialect dialect = null;
+    private final int attempts;
+    private final Duration backoff;
+    private final ThreadLocal<Transaction> transactions = new ThreadLocal<>();
+    private final ThreadLocal<Bound> scopes = new ThreadLocal<>();
+    private final int statements;
+    private final int fetchSize;
+    private final int batchSize;
+    private final int queryTimeout;
+    private final Guard guard;
+    private final Set<String> sites = Sets.newConcurrentHashSet();
+    private volatile BooleanSupplier mainThread = () -> Sponge.isServerAvailable() && Sponge.getServer().isMainThread();
+    @Nullable private volatile Thread closing = null;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
 
-    private DatabaseService(DataSource source) {
-        this.source = source;
+    private DatabaseService(Builder builder) {
+        source = builder.source;
+        statements = builder.statements;
+        fetchSize = builder.fetchSize;
+        batchSize = builder.batchSize;
+        queryTimeout = (int) Math.min((builder.queryTimeout.toMillis() + 999) / 1000, Integer.MAX_VALUE);
+        guard = builder.guard;
+        long timeout = builder.timeout.toNanos();
+        executor = new ThreadPoolExecutor(builder.threads, builder.threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(builder.capacity),
+                new ThreadFactoryBuilder().setNameFormat("flashlibs-database-%d").setDaemon(true).build(),
+                (task, pool) -> {
+                    try {
+                        long wait = task instanceof Detached || mainThread.getAsBoolean() ? 0 : timeout;
+                        if (pool.isShutdown() || !pool.getQueue().offer(task, wait, TimeUnit.NANOSECONDS)) {
+                            throw new RejectedExecutionException("Database worker queue is full.");
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        scheduler = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("flashlibs-database-scheduler").setDaemon(true).build());
+        scheduler.setRemoveOnCancelPolicy(true);
+        sync = builder.plugin != null ? Sponge.getScheduler().createSyncExecutor(builder.plugin) : null;
+        logger = builder.logger != null ? builder.logger
+                : builder.plugin != null ? builder.plugin.getLogger()
+                : LoggerFactory.getLogger(DatabaseService.class);
+        metrics = new DatabaseMetrics(logger, builder.slowQueryThreshold);
+        codecs = builder.codecs.isEmpty() ? CodecRegistry.DEFAULT : new CodecRegistry(builder.codecs);
+        attempts = builder.attempts;
+        backoff = builder.backoff;
+        cache = builder.cacheSize > 0 ? new QueryCache(builder.cacheSize, builder.cacheExpiration) : null;
+        pool = builder.pool > 0 ? new ConnectionPool(this, source, builder.pool, builder.poolTimeout, builder.leakThreshold) : null;
+        replicas = !builder.replicas.isEmpty() ? new ReplicaSet(builder.replicas, builder.routing) : null;
     }
 
     /**
      * Creates a service backed by the given {@link DataSource}.
      */
     public static DatabaseService of(DataSource source) {
-        return new DatabaseService(source);
+        return builder(source).build();
     }
 
     /**
@@ -38,7 +149,7 @@ public final class DatabaseService {
      * @see SqlService#getDataSource(String)
      */
     public static DatabaseService of(String jdbc) throws SQLException {
-        return new DatabaseService(Sponge.getServiceManager().provideUnchecked(SqlService.class).getDataSource(jdbc));
+        return of(Sponge.getServiceManager().provideUnchecked(SqlService.class).getDataSource(jdbc));
     }
 
     public DataSource getSource() {
@@ -46,12 +157,288 @@ public final class DatabaseService {
     }
 
     /**
-     * Returns a reusable connection to the database.
+     * Returns the {@link ConnectionPool} owned by this service, if pooling was
+     * enabled through the builder.
+     *
+     * @see Builder#pool(int)
+     */
+    public Optional<ConnectionPool> getPool() {
+        return Optional.ofNullable(pool);
+    }
+
+    /**
+     * Returns the total number of times a statement was reused from the cache
+     * of a closed connection created by this service.
+     *
+     * @see Connection#getStatementHits()
+     */
+    public long getStatementHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the total number of times a statement had to be prepared by a
+     * closed connection created by this service.
+     *
+     * @see Connection#getStatementMisses()
+     */
+    public long getStatementMisses() {
+        return misses.sum();
+    }
+
+    int getStatementCapacity() {
+        return statements;
+    }
+
+    int getFetchSize() {
+        return fetchSize;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the query timeout in seconds, where 0 is no timeout.
+     */
+    int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    /**
+     * Checks whether the current thread is the main server thread according
+     * to the configured {@link Guard}, which is called before executing each
+     * statement. The thread closing this service is exempt, since resources
+     * flush their pending writes when closed during server shutdown.
+     *
+     * @throws IllegalStateException If the guard is {@link Guard#THROW} and
+     *     this is the main thread
+     */
+    void checkThread(String sql) {
+        if (guard == Guard.OFF || closing == Thread.currentThread() || !mainThread.getAsBoolean()) {
+            return;
+        }
+        String message = "Database statement executed on the main thread: " + sql;
+        switch (guard) {
+            case THROW:
+                throw new IllegalStateException(message);
+            case LOG_ONCE:
+                StackTraceElement site = getCallSite();
+                if (site != null && sites.add(site.toString())) {
+                    logger.warn(message, new Throwable("Main thread database access"));
+                }
+                break;
+            default:
+                logger.warn(message, new Throwable("Main thread database access"));
+        }
+    }
+
+    /**
+     * Sets the check for whether the current thread is the main server
+     * thread, which uses the Sponge server by default.
+     */
+    void setMainThread(BooleanSupplier mainThread) {
+        this.mainThread = mainThread;
+    }
+
+    /**
+     * Returns the first stack frame outside of this package, which is the
+     * code that called into the database library.
+     */
+    @Nullable
+    private static StackTraceElement getCallSite() {
+        String prefix = DatabaseService.class.getPackage().getName() + ".";
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            if (!element.getClassName().startsWith(prefix)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    void recordStatements(long hits, long misses) {
+        this.hits.add(hits);
+        this.misses.add(misses);
+    }
+
+    /**
+     * Returns the {@link DatabaseMetrics} recording the statements executed
+     * through this service.
+     */
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the {@link CodecRegistry} used for binding parameters and reading
+     * results of statements executed through this service.
+     *
+     * @see Builder#codec(Class, Codec)
+     */
+    public CodecRegistry getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Returns the {@link Dialect} of the primary database, which is detected
+     * from the connection metadata once and cached.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public Dialect getDialect() throws SQLException {
+        Dialect dialect = this.dialect;
+        if (dialect == null) {
+            try (Connection connection = getConnection()) {
+                dialect = Dialect.of(connection.connection.getMetaData());
+            }
+            this.dialect = dialect;
+        }
+        return dialect;
+    }
+
+    /**
+     * Returns the {@link QueryCache} used by this service, if caching was
+     * enabled through the builder.
+     *
+     * @see Builder#cache(long, Duration)
+     */
+    public Optional<QueryCache> getQueryCache() {
+        return Optional.ofNullable(cache);
+    }
+
+    /**
+     * Returns the {@link ChangeLog} recording the modifications executed
+     * through this service, or null if there is none.
+     */
+    @Nullable
+    ChangeLog getChangeLog() {
+        return changes;
+    }
+
+    /**
+     * Sets the {@link ChangeLog} recording the modifications executed through
+     * this service.
+     *
+     * @throws IllegalStateException If another change log is already set
+     */
+    void setChangeLog(@Nullable ChangeLog changes) {
+        Preconditions.checkState(changes == null || this.changes == null, "A change log is already recording modifications.");
+        this.changes = changes;
+    }
+
+    /**
+     * Returns an executor which runs tasks on the main server thread, which can
+     * be used to return to the main thread from an asynchronous result.
+     *
+     * @throws IllegalStateException If no plugin was provided to the builder
+     * @see Builder#sync(PluginContainer)
+     */
+    public Executor getSyncExecutor() {
+        Preconditions.checkState(sync != null, "No plugin was provided for a sync executor.");
+        return sync;
+    }
+
+    /**
+     * Returns a reusable connection to the database. If replicas are
+     * configured, this connection is to the primary source. Within a
+     * {@link #scope()} on this thread, the connection bound to the scope is
+     * returned instead, which is only closed once the scope ends.
      *
      * @throws SQLException If a database access error occurs
      */
     public Connection getConnection() throws SQLException {
-        return new Connection(source.getConnection());
+        Bound bound = scopes.get();
+        if (bound != null) {
+            if (bound.connection == null) {
+                bound.connection = new ScopedConnection(this, acquire());
+            }
+            return bound.connection;
+        }
+        return new Connection(this, acquire());
+    }
+
+    /**
+     * Returns a reusable connection for read-only statements, which is to a
+     * replica selected by the configured {@link Routing} if replicas are
+     * configured. The primary source is used instead if there are no replicas,
+     * reads are pinned to the primary on this thread, or this thread is within
+     * {@link #inTransaction(SqlFunction)} or a {@link #scope()}.
+     *
+     * @throws SQLException If a database access error occurs
+     * @see Builder#replicas(DataSource...)
+     * @see #pin()
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (replicas == null || pins.get()[0] > 0 || transactions.get() != null || scopes.get() != null) {
+            return getConnection();
+        }
+        long start = System.nanoTime();
+        Connection connection = replicas.getConnection(this);
+        metrics.recordAcquisition(System.nanoTime() - start);
+        return connection;
+    }
+
+    /**
+     * Pins reads on the current thread to the primary source until the
+     * returned pin is closed, which ensures reads observe modifications that
+     * may not have reached the replicas yet. Pins may be nested, and only
+     * affect statements executed synchronously on this thread.
+     *
+     * @see #getReadConnection()
+     */
+    public Pin pin() {
+        int[] count = pins.get();
+        count[0]++;
+        return new Pin(count);
+    }
+
+    /**
+     * Binds a single connection to the current thread until the returned scope
+     * is closed, so that statements executed through this service on this
+     * thread reuse that connection instead of acquiring one each. The
+     * connection is acquired on first use and is to the primary source.
+     * Scopes may be nested, in which case the connection is released once the
+     * outermost scope is closed, and must be closed on the same thread.
+     *
+     * <p>Transactions are not affected and still use their own connection.
+     * Streams must be closed before the scope, as the underlying connection is
+     * closed with it.</p>
+     *
+     * @see #inScope(SqlFunction)
+     */
+    public Scope scope() {
+        Bound bound = scopes.get();
+        if (bound == null) {
+            bound = new Bound();
+            scopes.set(bound);
+        }
+        bound.depth++;
+        return new Scope(this, bound);
+    }
+
+    /**
+     * Executes the given work within a {@link #scope()}, passing the bound
+     * connection to the work.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public <T> T inScope(SqlFunction<Connection, T> work) throws SQLException {
+        Scope scope = scope();
+        try {
+            return work.apply(getConnection());
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Executes {@link #inScope(SqlFunction)} on the worker pool, which binds
+     * the connection to the worker thread for the duration of the work.
+     *
+     * @throws RejectedExecutionException If the worker queue remains full
+     */
+    public <T> CompletableFuture<T> scopeAsync(SqlFunction<Connection, T> work) {
+        return submit(() -> inScope(work));
     }
 
     /**
@@ -61,7 +448,20 @@ public final class DatabaseService {
      * @throws SQLException If a database access error occurs
      */
     public Transaction getTransaction() throws SQLException {
-        return new Transaction(source.getConnection());
+        return new Transaction(this, acquire());
+    }
+
+    /**
+     * Acquires a physical connection from the pool if enabled, or otherwise
+     * directly from the source.
+     *
+     * @throws SQLException If a database access error occurs
+     */
+    private java.sql.Connection acquire() throws SQLException {
+        long start = System.nanoTime();
+        java.sql.Connection connection = pool != null ? pool.getConnection() : source.getConnection();
+        metrics.recordAcquisition(System.nanoTime() - start);
+        return connection;
     }
 
     /**
@@ -76,22 +476,936 @@ public final class DatabaseService {
         }
     }
 
+    /**
+     * Opens a unique transaction to execute an SQL statement as a batch of
+     * database modifications for each of the given arguments, which is
+     * committed once all modifications succeed. The batch is split into chunks
+     * of the configured batch size, and the update counts for each chunk are
+     * returned in order.
+     *
+     * @throws SQLException If a database error occurs
+     * @see Connection#batch(String, Iterable)
+     * @see Builder#batchSize(int)
+     */
+    public List<int[]> batch(String sql, Iterable<Object[]> args) throws SQLException {
+        try (Transaction transaction = getTransaction()) {
+            List<int[]> counts = transaction.batch(sql, args);
+            transaction.commit();
+            return counts;
+        }
+    }
+
     /**
      * Opens a unique connection to execute an SQL statement with the given
      * arguments as a database query and returns the retrieved results. The
      * results are cached in memory independent of a connection, since the
-     * connection is discarded.
+     * connection is discarded. If caching is enabled, the results may be
+     * served from the {@link QueryCache}, which is only filled from the
+     * primary source.
      *
      * @throws SQLException If a database error occurs
      * @see CachedRowSet
      * @see java.sql.ResultSet
      */
     public CachedRowSet query(String sql, Object... args) throws SQLException {
-        try (Connection connection = getConnection()) {
-            CachedRowSet cached = RowSetProvider.newFactory().createCachedRowSet();
+        if (cache != null) {
+            return cache.<CachedRowSet>get(null, sql, args, () -> populate(getConnection(), sql, args)).createCopy();
+        }
+        return populate(getReadConnection(), sql, args);
+    }
+
+    private CachedRowSet populate(Connection source, String sql, Object... args) throws SQLException {
+        try (Connection connection = source) {
+            CachedRowSet cached = getRowSetFactory().createCachedRowSet();
             cached.populate(connection.query(sql, args));
             return cached;
         }
     }
 
+    /**
+     * Opens a unique connection to execute an SQL statement with the given
+     * arguments as a database query and returns the retrieved results
+     * materialized into a {@link ResultTable}. Tables store columns as
+     * primitive arrays and are immutable, so they use significantly less
+     * memory than a {@link CachedRowSet} and can be shared between threads.
+     * If caching is enabled, the table may be served from the
+     * {@link QueryCache}, which is only filled from the primary source.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public ResultTable table(String sql, Object... args) throws SQLException {
+        if (cache != null) {
+            return cache.get(ResultTable.class, sql, args, () -> populateTable(getConnection(), sql, args));
+        }
+        return populateTable(getReadConnection(), sql, args);
+    }
+
+    private ResultTable populateTable(Connection source, String sql, Object... args) throws SQLException {
+        try (Connection connection = source) {
+            return connection.table(sql, args);
+        }
+    }
+
+    /**
+     * Opens a unique connection to execute an SQL statement with the given
+     * arguments as a database query and returns a stream over the retrieved
+     * rows. Unlike {@link #query(String, Object...)}, rows are fetched from the
+     * database as the stream is consumed, so large results can be processed in
+     * constant memory. The connection is held until the stream is closed or
+     * fully consumed, so the stream should be used with try-with-resources.
+     *
+     * <p>Some drivers require additional configuration to fetch incrementally,
+     * such as {@code useCursorFetch=true} for MySQL.</p>
+     *
+     * @throws SQLException If a database error occurs
+     * @see Connection#stream(String, Object...)
+     * @see Builder#fetchSize(int)
+     */
+    public Stream<ResultSet> stream(String sql, Object... args) throws SQLException {
+        return openStream(c -> c.getCachedStatement(sql).setFetchSize(fetchSize).setParams(args).stream(c));
+    }
+
+    /**
+     * Opens a unique connection to execute an SQL statement with the given
+     * arguments as a database query and returns the retrieved rows mapped
+     * using the given mapper. If caching is enabled, the results may be served
+     * from the {@link QueryCache}, in which case the list is unmodifiable and
+     * shared between callers using the same mapper instance. The cache is only
+     * filled from the primary source.
+     *
+     * @throws SQLException If a database error occurs
+     * @see RowMapper
+     */
+    public <T> List<T> query(RowMapper<T> mapper, String sql, Object... args) throws SQLException {
+        if (cache != null) {
+            return cache.get(mapper, sql, args, () -> Collections.unmodifiableList(populate(getConnection(), mapper, sql, args)));
+        }
+        return populate(getReadConnection(), mapper, sql, args);
+    }
+
+    private <T> List<T> populate(Connection source, RowMapper<T> mapper, String sql, Object... args) throws SQLException {
+        try (Connection connection = source) {
+            return connection.query(mapper, sql, args);
+        }
+    }
+
+    /**
+     * Opens a unique connection to execute an SQL statement with the given
+     * arguments as a database query and returns a stream over the retrieved
+     * rows mapped using the given mapper, as in
+     * {@link #stream(String, Object...)}.
+     *
+     * @throws SQLException If a database error occurs
+     * @see RowMapper
+     */
+    public <T> Stream<T> stream(RowMapper<T> mapper, String sql, Object... args) throws SQLException {
+        return openStream(c -> c.getCachedStatement(sql).setFetchSize(fetchSize).setParams(args).stream(mapper, c));
+    }
+
+    /**
+     * Opens a unique read connection and creates a stream with the given
+     * function, which is responsible for closing the connection with the
+     * stream. If the stream cannot be created, the connection is closed
+     * immediately.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    private <T> Stream<T> openStream(SqlFunction<Connection, Stream<T>> function) throws SQLException {
+        Connection connection = getReadConnection();
+        try {
+            return function.apply(connection);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                connection.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Executes {@link #update(String, Object...)} on the worker pool.
+     *
+     * @throws RejectedExecutionException If the worker queue remains full
+     */
+    public CompletableFuture<Void> updateAsync(String sql, Object... args) {
+        return submit(() -> {
+            update(sql, args);
+            return null;
+        });
+    }
+
+    /**
+     * Executes {@link #query(String, Object...)} on the worker pool.
+     *
+     * @throws RejectedExecutionException If the worker queue remains full
+     */
+    public CompletableFuture<CachedRowSet> queryAsync(String sql, Object... args) {
+        return submit(() -> query(sql, args));
+    }
+
+    /**
+     * Executes {@link #table(String, Object...)} on the worker pool.
+     *
+     * @throws RejectedExecutionException If the worker queue remains full
+     */
+    public CompletableFuture<ResultTable> tableAsync(String sql, Object... args) {
+        return submit(() -> table(sql, args));
+    }
+
+    /**
+     * Executes {@link #query(RowMapper, String, Object...)} on the worker pool.
+     *
+     * @throws RejectedExecutionException If the worker queue remains full
+     */
+    public <T> CompletableFuture<List<T>> queryAsync(RowMapper<T> mapper, String sql, Object... args) {
+        return submit(() -> query(mapper, sql, args));
+    }
+
+    /**
+     * Executes {@link #inTransaction(SqlFunction)} on the worker pool.
+     *
+     * @throws RejectedExecutionException If the worker queue remains full
+     */
+    public <T> CompletableFuture<T> transactionAsync(SqlFunction<Transaction, T> work) {
+        return submit(() -> inTransaction(work));
+    }
+
+    /**
+     * Executes the given work within a {@link Transaction}, which is committed
+     * once the work completes and rolled back if an exception is thrown. If the
+     * transaction fails with a transient error such as a deadlock or a busy
+     * database, the work is retried with a randomized, increasing delay up to
+     * the configured number of attempts, so the work should not have other
+     * side effects.
+     *
+     * <p>If this method is called within the work of another transaction on
+     * the same thread, the work is instead nested within that transaction
+     * using a savepoint and is not retried independently.</p>
+     *
+     * @throws SQLException If a database error occurs
+     * @see Transaction#nest(SqlFunction)
+     * @see Builder#retries(int, Duration)
+     */
+    public <T> T inTransaction(SqlFunction<Transaction, T> work) throws SQLException {
+        Transaction current = transactions.get();
+        if (current != null) {
+            return current.nest(work);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try (Transaction transaction = getTransaction()) {
+                transactions.set(transaction);
+                try {
+                    T result = work.apply(transaction);
+                    transaction.commit();
+                    return result;
+                } finally {
+                    transactions.remove();
+                }
+            } catch (SQLException e) {
+                if (attempt >= attempts || !isTransient(e)) {
+                    throw e;
+                }
+                long bound = backoff.toNanos() << Math.min(attempt - 1, 5);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(bound / 2, bound + 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes an SQL statement as a batch of modifications for each of the
+     * given rows as in {@link #batch(String, Iterable)}, returning the rows
+     * that were skipped. If the batch is rejected because of its data, such as
+     * a value that is too long or a constraint violation, the rows are instead
+     * executed one at a time within a single transaction using a savepoint for
+     * each row, and rejected rows are logged and skipped so that they cannot
+     * block the remaining rows. Any other error is thrown without writing any
+     * rows.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    <T> List<T> batchSkipping(String sql, List<T> rows, Function<? super T, Object[]> args) throws SQLException {
+        try {
+            batch(sql, Lists.transform(rows, args::apply));
+            return ImmutableList.of();
+        } catch (SQLException e) {
+            if (!isRejected(e)) {
+                throw e;
+            }
+            try {
+                return isolate(sql, rows, args);
+            } catch (SQLException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+                throw e;
+            }
+        }
+    }
+
+    private <T> List<T> isolate(String sql, List<T> rows, Function<? super T, Object[]> args) throws SQLException {
+        List<T> skipped = Lists.newArrayList();
+        try (Transaction transaction = getTransaction()) {
+            for (T row : rows) {
+                Object[] values = args.apply(row);
+                try {
+                    transaction.nest(t -> {
+                        t.update(sql, values);
+                        return null;
+                    });
+                } catch (SQLException e) {
+                    if (!isRejected(e)) {
+                        throw e;
+                    }
+                    logger.error("Skipped row rejected by the database: " + sql + " " + Arrays.deepToString(values), e);
+                    skipped.add(row);
+                }
+            }
+            transaction.commit();
+        }
+        return skipped;
+    }
+
+    /**
+     * Returns whether the given exception, or any exception it was caused by,
+     * represents an error caused by the data of a single row, for which
+     * retrying the same row will fail again. This includes data exceptions
+     * and integrity constraint violations (SQLState classes 22 and 23) as well
+     * as constraint violations and type mismatches in SQLite (19 and 20).
+     */
+    private static boolean isRejected(SQLException exception) {
+        for (Throwable t = exception; t != null; t = t.getCause()) {
+            for (SQLException e = t instanceof SQLException ? (SQLException) t : null; e != null; e = e.getNextException()) {
+                String state = Strings.nullToEmpty(e.getSQLState());
+                if (e instanceof SQLDataException || e instanceof SQLIntegrityConstraintViolationException
+                        || state.startsWith("22") || state.startsWith("23")
+                        || (e.getClass().getName().startsWith("org.sqlite") && ((e.getErrorCode() & 0xFF) == 19 || (e.getErrorCode() & 0xFF) == 20))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the given exception, or any exception it was caused by,
+     * represents a transient error for which retrying the transaction may
+     * succeed. This includes serialization failures and deadlocks (SQLState
+     * 40001 and 40P01), MySQL deadlocks and lock timeouts (1213 and 1205), H2
+     * lock timeouts (HYT00), and busy or locked databases in SQLite (5 and 6).
+     */
+    private static boolean isTransient(SQLException exception) {
+        for (Throwable t = exception; t != null; t = t.getCause()) {
+            for (SQLException e = t instanceof SQLException ? (SQLException) t : null; e != null; e = e.getNextException()) {
+                String state = Strings.nullToEmpty(e.getSQLState());
+                if (e instanceof SQLTransientException || state.equals("40001") || state.equals("40P01")
+                        || state.equals("HYT00") || e.getErrorCode() == 1205 || e.getErrorCode() == 1213
+                        || (e.getClass().getName().startsWith("org.sqlite") && ((e.getErrorCode() & 0xFF) == 5 || (e.getErrorCode() & 0xFF) == 6))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Schedules the given task to be submitted to the worker pool periodically
+     * with the given interval, skipping any runs while the previous run is
+     * still in progress. Tasks that fail are logged, and the returned future is
+     * cancelled when this service is closed.
+     */
+    ScheduledFuture<?> schedule(Duration interval, Callable<?> task) {
+        AtomicBoolean running = new AtomicBoolean(false);
+        long nanos = interval.toNanos();
+        return scheduler.scheduleWithFixedDelay(() -> {
+            if (running.compareAndSet(false, true)) {
+                try {
+                    submit(task, false).whenComplete((r, t) -> {
+                        running.set(false);
+                        if (t != null) {
+                            logger.error("Scheduled database task failed.", t);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    running.set(false);
+                    logger.warn("Scheduled database task was rejected.", e);
+                }
+            }
+        }, nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers a resource that is closed before this service is closed.
+     */
+    void register(AutoCloseable resource) {
+        resources.add(resource);
+    }
+
+    /**
+     * Unregisters a resource previously registered to this service, which is
+     * used once the resource has been closed independently.
+     */
+    void unregister(AutoCloseable resource) {
+        resources.remove(resource);
+    }
+
+    Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * Returns the shared {@link RowSetFactory}, which is created on first use
+     * as creating one requires a service lookup.
+     *
+     * @throws SQLException If the factory could not be created
+     */
+    private static RowSetFactory getRowSetFactory() throws SQLException {
+        RowSetFactory factory = DatabaseService.factory;
+        if (factory == null) {
+            factory = RowSetProvider.newFactory();
+            DatabaseService.factory = factory;
+        }
+        return factory;
+    }
+
+    /**
+     * Submits the given task to the worker pool, returning a future that is
+     * completed with the result of the task. If the worker queue is full, the
+     * calling thread blocks until either space is available or the configured
+     * timeout elapses, in which case the task is rejected. The main thread is
+     * never blocked, so the task is rejected immediately instead.
+     *
+     * @throws RejectedExecutionException If the worker queue remains full
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task) {
+        return submit(task, true);
+    }
+
+    /**
+     * Submits the given task to the worker pool as in
+     * {@link #submit(Callable)}, rejecting the task immediately if the worker
+     * queue is full and waiting is disabled. This is used for background work
+     * such as flushes, which is retried later and should never block the
+     * caller.
+     *
+     * @throws RejectedExecutionException If the worker queue is full
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task, boolean wait) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable runnable = () -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+        executor.execute(wait ? runnable : new Detached(runnable));
+        return future;
+    }
+
+    /**
+     * Submits the given task to the worker pool after the given delay, as in
+     * {@link #submit(Callable)}. If the task is rejected, the returned future
+     * is completed exceptionally.
+     *
+     * @throws RejectedExecutionException If this service is closed
+     */
+    <T> CompletableFuture<T> submit(Duration delay, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        scheduler.schedule(() -> {
+            try {
+                submit(task, false).whenComplete((r, t) -> {
+                    if (t != null) {
+                        future.completeExceptionally(t);
+                    } else {
+                        future.complete(r);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        }, delay.toNanos(), TimeUnit.NANOSECONDS);
+        return future;
+    }
+
+    /**
+     * Closes any components created for this service, such as
+     * {@link WriteBuffer}s, and then shuts down the worker pool, waiting a
+     * short period for queued tasks to complete. Components are closed
+     * without the thread {@link Guard}, so that their final writes are not
+     * rejected when closing on the main thread. Synchronous methods remain
+     * usable after this service is closed unless pooling is enabled, in which
+     * case the connection pool is closed as well.
+     */
+    @Override
+    public void close() {
+        closing = Thread.currentThread();
+        try {
+            for (AutoCloseable resource : ImmutableList.copyOf(resources)) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    logger.error("Failed to close database resource.", e);
+                }
+            }
+        } finally {
+            closing = null;
+        }
+        scheduler.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Represents the action taken when a statement is executed on the main
+     * server thread, which blocks the server until the statement completes.
+     *
+     * @see Builder#guard(Guard)
+     */
+    public enum Guard {
+
+        /**
+         * Does not check the thread, which is the default.
+         */
+        OFF,
+
+        /**
+         * Logs a warning with the stack trace for every statement.
+         */
+        LOG,
+
+        /**
+         * Logs a warning with the stack trace once for each call site, which
+         * is the first caller outside of the database library.
+         */
+        LOG_ONCE,
+
+        /**
+         * Throws an {@link IllegalStateException} instead of executing the
+         * statement.
+         */
+        THROW
+
+    }
+
+    /**
+     * Represents the strategy for selecting a replica for each read.
+     *
+     * @see Builder#routing(Routing)
+     */
+    public enum Routing {
+
+        /**
+         * Selects each replica in turn.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Selects the replica with the fewest connections currently open
+         * through this service.
+         */
+        LEAST_BUSY
+
+    }
+
+    /**
+     * Represents reads on a thread being pinned to the primary source, which
+     * is released once closed.
+     *
+     * @see #pin()
+     */
+    public static final class Pin implements AutoCloseable {
+
+        private final int[] count;
+        private boolean closed = false;
+
+        private Pin(int[] count) {
+            this.count = count;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                count[0]--;
+            }
+        }
+
+    }
+
+    /**
+     * Represents a connection being bound to a thread, which is released once
+     * closed.
+     *
+     * @see #scope()
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final DatabaseService service;
+        private final Bound bound;
+        private boolean closed = false;
+
+        private Scope(DatabaseService service, Bound bound) {
+            this.service = service;
+            this.bound = bound;
+        }
+
+        /**
+         * Ends this scope, closing the bound connection if this is the
+         * outermost scope.
+         *
+         * @throws SQLException If a database error occurs
+         */
+        @Override
+        public void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                if (--bound.depth == 0) {
+                    service.scopes.remove();
+                    if (bound.connection != null) {
+                        bound.connection.release();
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The state of the scopes on a thread.
+     */
+    private static final class Bound {
+
+        private int depth = 0;
+        @Nullable private ScopedConnection connection = null;
+
+    }
+
+    /**
+     * A connection bound to a scope, which is not closed until the scope ends.
+     */
+    private static final class ScopedConnection extends Connection {
+
+        private ScopedConnection(DatabaseService service, java.sql.Connection connection) {
+            super(service, connection);
+        }
+
+        @Override
+        public void close() {}
+
+        private void release() throws SQLException {
+            super.close();
+        }
+
+    }
+
+    /**
+     * A task that is rejected immediately instead of waiting for space in a
+     * full worker queue.
+     */
+    private static final class Detached implements Runnable {
+
+        private final Runnable task;
+
+        private Detached(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+    }
+
+    /**
+     * Creates a new builder for services backed by the given
+     * {@link DataSource}.
+     */
+    public static Builder builder(DataSource source) {
+        return new Builder(source);
+    }
+
+    /**
+     * A builder for creating {@link DatabaseService}s.
+     */
+    public static final class Builder {
+
+        private final DataSource source;
+        private int threads = 4;
+        private int capacity = 1024;
+        private Duration timeout = Duration.ofSeconds(1);
+        private int statements = 32;
+        private int fetchSize = 256;
+        private int batchSize = 500;
+        private Duration queryTimeout = Duration.ZERO;
+        private Guard guard = Guard.OFF;
+        @Nullable private PluginContainer plugin = null;
+        @Nullable private Logger logger = null;
+        private int pool = 0;
+        private Duration poolTimeout = Duration.ofSeconds(30);
+        private Duration leakThreshold = Duration.ZERO;
+        private long cacheSize = 0;
+        private Duration cacheExpiration = Duration.ZERO;
+        private int attempts = 3;
+        private Duration backoff = Duration.ofMillis(50);
+        private Duration slowQueryThreshold = Duration.ZERO;
+        private final Map<Class<?>, Codec<?>> codecs = Maps.newHashMap();
+        private final List<DataSource> replicas = Lists.newArrayList();
+        private Routing routing = Routing.ROUND_ROBIN;
+
+        private Builder(DataSource source) {
+            this.source = source;
+        }
+
+        /**
+         * Sets the number of worker threads used for asynchronous statements.
+         * The default is 4, and idle threads are released after a minute.
+         */
+        public Builder threads(int threads) {
+            Preconditions.checkArgument(threads > 0, "Threads must be positive.");
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of asynchronous tasks waiting for a worker
+         * thread. The default is 1024.
+         */
+        public Builder capacity(int capacity) {
+            Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time a caller is blocked waiting for space in a full
+         * worker queue before the task is rejected. The main thread and
+         * background work, such as the flushes started by a
+         * {@link WriteBuffer}, never wait and are rejected immediately. The
+         * default is 1 second.
+         */
+        public Builder timeout(Duration timeout) {
+            Preconditions.checkArgument(!timeout.isNegative(), "Timeout must not be negative.");
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of prepared statements cached by each
+         * connection, evicting the least recently used statement. The default
+         * is 32, and a capacity of 0 disables caching.
+         */
+        public Builder statements(int statements) {
+            Preconditions.checkArgument(statements >= 0, "Statements must not be negative.");
+            this.statements = statements;
+            return this;
+        }
+
+        /**
+         * Sets the number of rows fetched from the database at a time when
+         * streaming results. The default is 256, and a size of 0 uses the
+         * driver default.
+         *
+         * @see DatabaseService#stream(String, Object...)
+         */
+        public Builder fetchSize(int fetchSize) {
+            Preconditions.checkArgument(fetchSize >= 0, "Fetch size must not be negative.");
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of modifications executed together in a
+         * single batch. The default is 500.
+         *
+         * @see DatabaseService#batch(String, Iterable)
+         */
+        public Builder batchSize(int batchSize) {
+            Preconditions.checkArgument(batchSize > 0, "Batch size must be positive.");
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the timeout for statements created by connections of the
+         * service, after which the driver cancels the statement. The timeout
+         * is rounded up to whole seconds. The default is
+         * {@link Duration#ZERO}, which uses no timeout.
+         *
+         * @see java.sql.Statement#setQueryTimeout(int)
+         */
+        public Builder queryTimeout(Duration timeout) {
+            Preconditions.checkArgument(!timeout.isNegative(), "Timeout must not be negative.");
+            queryTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the action taken when a statement is executed on the main
+         * server thread. The default is {@link Guard#OFF}.
+         */
+        public Builder guard(Guard guard) {
+            this.guard = guard;
+            return this;
+        }
+
+        /**
+         * Sets the plugin used for creating the executor returned by
+         * {@link DatabaseService#getSyncExecutor()}.
+         */
+        public Builder sync(PluginContainer plugin) {
+            this.plugin = plugin;
+            return this;
+        }
+
+        /**
+         * Enables a {@link ConnectionPool} owned by the service with the given
+         * maximum number of connections. This should only be used for sources
+         * that are not already pooled. By default, pooling is disabled.
+         */
+        public Builder pool(int size) {
+            Preconditions.checkArgument(size > 0, "Pool size must be positive.");
+            pool = size;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait for a pooled connection before failing.
+         * The default is 30 seconds.
+         *
+         * @see #pool(int)
+         */
+        public Builder poolTimeout(Duration timeout) {
+            Preconditions.checkArgument(!timeout.isNegative(), "Timeout must not be negative.");
+            poolTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the time a pooled connection may be held before it is reported
+         * as a potential leak, logging the stack trace of where it was borrowed.
+         * The default is {@link Duration#ZERO}, which disables leak detection.
+         *
+         * @see #pool(int)
+         */
+        public Builder leakThreshold(Duration threshold) {
+            Preconditions.checkArgument(!threshold.isNegative(), "Threshold must not be negative.");
+            leakThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Enables a {@link QueryCache} for the results of the {@code query}
+         * methods of the service, holding up to the given number of results
+         * for the given duration. By default, caching is disabled.
+         */
+        public Builder cache(long size, Duration expiration) {
+            Preconditions.checkArgument(size > 0, "Cache size must be positive.");
+            Preconditions.checkArgument(!expiration.isNegative() && !expiration.isZero(), "Expiration must be positive.");
+            cacheSize = size;
+            cacheExpiration = expiration;
+            return this;
+        }
+
+        /**
+         * Adds replica sources which are used for queries and streams, while
+         * modifications and transactions use the primary source. Replicas are
+         * not pooled by the service, so they should be pooled sources such as
+         * those provided by Sponge's {@code SqlService}. If the query cache is
+         * enabled, cached queries are read from the primary source instead,
+         * as results from a lagging replica would otherwise remain cached
+         * after the modification reaches it. By default, there are no
+         * replicas.
+         *
+         * @see DatabaseService#getReadConnection()
+         */
+        public Builder replicas(DataSource... replicas) {
+            Preconditions.checkArgument(replicas.length > 0, "Replicas must not be empty.");
+            this.replicas.addAll(Arrays.asList(replicas));
+            return this;
+        }
+
+        /**
+         * Sets the strategy for selecting a replica for each read. The default
+         * is {@link Routing#ROUND_ROBIN}.
+         *
+         * @see #replicas(DataSource...)
+         */
+        public Builder routing(Routing routing) {
+            this.routing = routing;
+            return this;
+        }
+
+        /**
+         * Registers the codec used for binding parameters and reading results
+         * of the given type, replacing any default codec. For example, UUIDs
+         * can be stored as strings with {@link Codec#UUID_STRING} or compactly
+         * with {@link Codec#UUID_BINARY} instead of being passed to the driver.
+         *
+         * @see CodecRegistry
+         */
+        public <T> Builder codec(Class<T> type, Codec<T> codec) {
+            codecs.put(type, codec);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of attempts for transactions executed with
+         * {@link DatabaseService#inTransaction(SqlFunction)} that fail with a
+         * transient error, and the base delay between attempts which doubles
+         * with each attempt. The default is 3 attempts with a delay of 50ms.
+         */
+        public Builder retries(int attempts, Duration backoff) {
+            Preconditions.checkArgument(attempts > 0, "Attempts must be positive.");
+            Preconditions.checkArgument(!backoff.isNegative(), "Backoff must not be negative.");
+            this.attempts = attempts;
+            this.backoff = backoff;
+            return this;
+        }
+
+        /**
+         * Sets the execution time after which statements are logged as slow
+         * queries, including their parameters and calling thread. The default
+         * is {@link Duration#ZERO}, which disables logging slow queries.
+         *
+         * @see DatabaseMetrics
+         */
+        public Builder slowQueryThreshold(Duration threshold) {
+            Preconditions.checkArgument(!threshold.isNegative(), "Threshold must not be negative.");
+            slowQueryThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Sets the logger used for reporting errors in background tasks. The
+         * default is the logger of the plugin if provided.
+         *
+         * @see #sync(PluginContainer)
+         */
+        public Builder logger(Logger logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        /**
+         * Creates a DatabaseService from this builder.
+         */
+        public DatabaseService build() {
+            return new DatabaseService(this);
+        }
+
+    }
+
 }
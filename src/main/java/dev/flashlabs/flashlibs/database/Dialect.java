@@ -0,0 +1,68 @@
+package dev.flashlabs.flashlibs.database;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * Represents the SQL dialect of a database, which is used by components that
+ * generate SQL with syntax that differs between databases.
+ *
+ * @see DatabaseService#getDialect()
+ */
+public enum Dialect {
+
+    SQLITE("INTEGER PRIMARY KEY AUTOINCREMENT", 999),
+    MYSQL("BIGINT AUTO_INCREMENT PRIMARY KEY", 65535),
+    POSTGRESQL("BIGSERIAL PRIMARY KEY", 32767),
+    H2("BIGINT AUTO_INCREMENT PRIMARY KEY", 32767),
+
+    /**
+     * Any other database, which is assumed to follow standard SQL.
+     */
+    UNKNOWN("BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY", 999);
+
+    private final String identity;
+    private final int parameters;
+
+    Dialect(String identity, int parameters) {
+        this.identity = identity;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Detects the dialect of the database with the given metadata.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public static Dialect of(DatabaseMetaData metadata) throws SQLException {
+        String product = metadata.getDatabaseProductName().toLowerCase(Locale.ROOT);
+        if (product.contains("sqlite")) {
+            return SQLITE;
+        } else if (product.contains("mysql") || product.contains("mariadb")) {
+            return MYSQL;
+        } else if (product.contains("postgres")) {
+            return POSTGRESQL;
+        } else if (product.equals("h2")) {
+            return H2;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Returns the column definition of an auto-incrementing integer primary
+     * key, excluding the column name.
+     */
+    String getIdentity() {
+        return identity;
+    }
+
+    /**
+     * Returns the maximum number of parameters in a single statement, which is
+     * the lowest limit of common versions of the database and driver.
+     */
+    int getParameterLimit() {
+        return parameters;
+    }
+
+}
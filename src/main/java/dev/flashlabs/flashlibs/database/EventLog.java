@@ -0,0 +1,502 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+/**
+ * Represents an append-only log of events stored in the database, such as
+ * economy transactions, punishments, or audit trails. Each event consists of
+ * the time it was appended, the entity it concerns (such as a player's UUID),
+ * a type, and optional data.
+ *
+ * <p>Appending an event only adds it to a lock-free queue, so it can be done
+ * on the main thread. Queued events are written as a batch within a single
+ * transaction periodically and once the number of queued events reaches the
+ * threshold, which bounds the time before an event is stored. Events that fail
+ * to be written remain queued and are retried on the next flush, and reaching
+ * the threshold does not start another flush until one succeeds, except for
+ * events rejected by the database, which are logged and dropped so that they
+ * cannot block the events queued after them. The number of unwritten events
+ * is limited by the capacity, and events appended while the log is full are
+ * dropped.</p>
+ *
+ * <p>If a retention period is set, events are compacted by partition, which
+ * is a fixed range of time. Once a partition is older than the retention
+ * period, its events are passed to the {@link Summarizer} (if any) and
+ * deleted within the same transaction. Compaction is checked every partition
+ * or every hour, whichever is shorter.</p>
+ */
+public final class EventLog implements AutoCloseable {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final String COLUMNS = "id, event_time, entity, event_type, data";
+    private static final RowMapper<Event> MAPPER = Event::new;
+    private static final int ENTITY_LENGTH = 64;
+    private static final int TYPE_LENGTH = 64;
+    private static final int DATA_LENGTH = 1024;
+
+    private final DatabaseService service;
+    private final String insert;
+    private final String select;
+    private final String selectEntity;
+    private final String selectPartition;
+    private final String minimum;
+    private final String delete;
+    private final int threshold;
+    private final int capacity;
+    private final long retention;
+    private final long partition;
+    @Nullable private final Summarizer summarizer;
+    private final Queue<Object[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+    private volatile boolean failing = false;
+    private final ScheduledFuture<?> task;
+    @Nullable private final ScheduledFuture<?> compaction;
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder compacted = new LongAdder();
+    private final Object lock = new Object();
+    private List<Object[]> retry = Lists.newArrayList();
+
+    private EventLog(Builder builder, DatabaseService service) throws SQLException {
+        this.service = service;
+        String table = builder.table;
+        insert = "INSERT INTO " + table + " (event_time, entity, event_type, data) VALUES (?, ?, ?, ?)";
+        select = "SELECT " + COLUMNS + " FROM " + table + " WHERE event_time >= ? AND event_time < ? ORDER BY event_time, id";
+        selectEntity = "SELECT " + COLUMNS + " FROM " + table + " WHERE entity = ? AND event_time >= ? AND event_time < ? ORDER BY event_time, id";
+        selectPartition = "SELECT " + COLUMNS + " FROM " + table + " WHERE event_time >= ? AND event_time < ? ORDER BY entity, event_time, id";
+        minimum = "SELECT MIN(event_time) FROM " + table;
+        delete = "DELETE FROM " + table + " WHERE event_time >= ? AND event_time < ?";
+        threshold = builder.threshold;
+        capacity = builder.capacity;
+        retention = builder.retention != null ? builder.retention.toMillis() : 0;
+        partition = builder.partition.toMillis();
+        summarizer = builder.summarizer;
+        Dialect dialect = service.getDialect();
+        String columns = "id " + dialect.getIdentity() + ", "
+                + "event_time BIGINT NOT NULL, "
+                + "entity VARCHAR(" + ENTITY_LENGTH + ") NOT NULL, "
+                + "event_type VARCHAR(" + TYPE_LENGTH + ") NOT NULL, "
+                + "data VARCHAR(" + DATA_LENGTH + ")";
+        if (dialect == Dialect.MYSQL) {
+            //MySQL does not support CREATE INDEX IF NOT EXISTS.
+            service.update("CREATE TABLE IF NOT EXISTS " + table + " (" + columns + ", "
+                    + "INDEX " + table + "_entity (entity, event_time), "
+                    + "INDEX " + table + "_time (event_time))");
+        } else {
+            service.update("CREATE TABLE IF NOT EXISTS " + table + " (" + columns + ")");
+            service.update("CREATE INDEX IF NOT EXISTS " + table + "_entity ON " + table + " (entity, event_time)");
+            service.update("CREATE INDEX IF NOT EXISTS " + table + "_time ON " + table + " (event_time)");
+        }
+        task = service.schedule(builder.interval, () -> {
+            flush();
+            return null;
+        });
+        if (builder.retention != null) {
+            Duration period = builder.partition.compareTo(Duration.ofHours(1)) < 0 ? builder.partition : Duration.ofHours(1);
+            compaction = service.schedule(period, () -> {
+                compact();
+                return null;
+            });
+        } else {
+            compaction = null;
+        }
+        service.register(this);
+    }
+
+    /**
+     * Appends an event for the given entity at the current time. The event is
+     * queued and written by the next flush. If the number of events queued
+     * since the last flush reaches the threshold and the last flush did not
+     * fail, a flush is started on the service's worker pool.
+     *
+     * @return True if the event was queued, or false if it was dropped because
+     *     the number of unwritten events has reached the capacity
+     * @throws IllegalArgumentException If the entity or type is longer than 64
+     *     characters, or the data is longer than 1024 characters
+     */
+    public boolean append(String entity, String type, @Nullable String data) {
+        Preconditions.checkArgument(entity.length() <= ENTITY_LENGTH, "Entity must be at most %s characters.", ENTITY_LENGTH);
+        Preconditions.checkArgument(type.length() <= TYPE_LENGTH, "Type must be at most %s characters.", TYPE_LENGTH);
+        Preconditions.checkArgument(data == null || data.length() <= DATA_LENGTH, "Data must be at most %s characters.", DATA_LENGTH);
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            dropped.increment();
+            return false;
+        }
+        queue.add(new Object[] {System.currentTimeMillis(), entity, type, data});
+        appended.increment();
+        if (size.incrementAndGet() >= threshold && !failing && queued.compareAndSet(false, true)) {
+            try {
+                service.submit(() -> {
+                    queued.set(false);
+                    flush();
+                    return null;
+                }, false).exceptionally(t -> {
+                    service.getLogger().error("Failed to flush event log.", t);
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                queued.set(false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes all queued events as a batch within a single transaction, in the
+     * order they were appended. If the batch fails, the events are written
+     * separately so that events rejected by the database are logged and
+     * dropped. If this fails, the events are kept for the next flush and the
+     * threshold no longer starts a flush until one succeeds.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public synchronized void flush() throws SQLException {
+        List<Object[]> batch = retry;
+        retry = Lists.newArrayList();
+        int drained = 0;
+        Object[] event;
+        while ((event = queue.poll()) != null) {
+            batch.add(event);
+            drained++;
+        }
+        size.addAndGet(-drained);
+        if (batch.isEmpty()) {
+            return;
+        }
+        int skipped;
+        try {
+            skipped = service.batchSkipping(insert, batch, Function.identity()).size();
+        } catch (SQLException | RuntimeException e) {
+            retry = batch;
+            failing = true;
+            throw e;
+        }
+        failing = false;
+        pending.addAndGet(-batch.size());
+        written.add(batch.size() - skipped);
+        rejected.add(skipped);
+        flushes.increment();
+    }
+
+    /**
+     * Returns a stream over the written events with a time in the given range,
+     * including the start and excluding the end, ordered by time. Queued events
+     * are not included. The stream should be closed after use.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public Stream<Event> query(Instant from, Instant to) throws SQLException {
+        return service.stream(MAPPER, select, from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    /**
+     * Returns a stream over the written events for the given entity, as in
+     * {@link #query(Instant, Instant)}.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public Stream<Event> query(String entity, Instant from, Instant to) throws SQLException {
+        return service.stream(MAPPER, selectEntity, entity, from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    /**
+     * Compacts all partitions older than the retention period, each within
+     * its own transaction. This is called periodically by the service if a
+     * retention period is set.
+     *
+     * @throws SQLException If a database error occurs
+     * @throws IllegalStateException If no retention period is set
+     */
+    public void compact() throws SQLException {
+        Preconditions.checkState(retention > 0, "No retention period is set.");
+        synchronized (lock) {
+            long cutoff = Math.floorDiv(System.currentTimeMillis() - retention, partition) * partition;
+            while (true) {
+                long start;
+                try (Connection connection = service.getConnection();
+                     ResultSet results = connection.query(minimum)) {
+                    results.next();
+                    start = results.getLong(1);
+                    if (results.wasNull()) {
+                        return;
+                    }
+                }
+                start = Math.floorDiv(start, partition) * partition;
+                if (start >= cutoff) {
+                    return;
+                }
+                try (Transaction transaction = service.getTransaction()) {
+                    if (summarizer != null) {
+                        try (Stream<Event> events = transaction.stream(MAPPER, selectPartition, start, start + partition)) {
+                            summarizer.summarize(transaction, events);
+                        }
+                    }
+                    transaction.update(delete, start, start + partition);
+                    transaction.commit();
+                }
+                compacted.increment();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events that have not been written yet.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Returns the total number of events appended to this log.
+     */
+    public long getAppended() {
+        return appended.sum();
+    }
+
+    /**
+     * Returns the total number of events dropped because the log was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the total number of events written to the database.
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Returns the total number of events rejected by the database and dropped.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the total number of successful flushes.
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Returns the total number of partitions compacted.
+     */
+    public long getCompacted() {
+        return compacted.sum();
+    }
+
+    /**
+     * Stops the periodic flush and compaction and flushes all queued events.
+     * This log is closed automatically when the service is closed.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    @Override
+    public void close() throws SQLException {
+        task.cancel(false);
+        if (compaction != null) {
+            compaction.cancel(false);
+        }
+        service.unregister(this);
+        flush();
+    }
+
+    /**
+     * Creates a new builder for event logs.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Represents an event written to the log.
+     */
+    public static final class Event {
+
+        private final long id;
+        private final Instant time;
+        private final String entity;
+        private final String type;
+        @Nullable private final String data;
+
+        private Event(ResultSet results) throws SQLException {
+            id = results.getLong(1);
+            time = Instant.ofEpochMilli(results.getLong(2));
+            entity = results.getString(3);
+            type = results.getString(4);
+            data = results.getString(5);
+        }
+
+        /**
+         * Returns the id of this event, which increases with each event
+         * written.
+         */
+        public long getId() {
+            return id;
+        }
+
+        public Instant getTime() {
+            return time;
+        }
+
+        public String getEntity() {
+            return entity;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public Optional<String> getData() {
+            return Optional.ofNullable(data);
+        }
+
+    }
+
+    /**
+     * Summarizes the events of a partition before they are deleted, such as
+     * by writing totals to another table.
+     */
+    @FunctionalInterface
+    public interface Summarizer {
+
+        /**
+         * Summarizes the given events, ordered by entity and then time, using
+         * the transaction that deletes them. If this throws an exception, the
+         * partition is not deleted.
+         *
+         * @throws SQLException If a database error occurs
+         */
+        void summarize(Transaction transaction, Stream<Event> events) throws SQLException;
+
+    }
+
+    /**
+     * A builder for creating {@link EventLog}s.
+     */
+    public static final class Builder {
+
+        private String table = "flashlibs_events";
+        private Duration interval = Duration.ofSeconds(1);
+        private int threshold = 500;
+        private int capacity = 100_000;
+        @Nullable private Duration retention = null;
+        private Duration partition = Duration.ofDays(1);
+        @Nullable private Summarizer summarizer = null;
+
+        private Builder() {}
+
+        /**
+         * Sets the name of the table storing events, which is created if it
+         * does not exist. The default is {@code flashlibs_events}.
+         */
+        public Builder table(String table) {
+            Preconditions.checkArgument(IDENTIFIER.matcher(table).matches(), "Table must be a valid identifier.");
+            this.table = table;
+            return this;
+        }
+
+        /**
+         * Sets the interval between periodic flushes, which is the maximum
+         * time an event is queued while the database is available. The
+         * default is 1 second.
+         */
+        public Builder interval(Duration interval) {
+            Preconditions.checkArgument(!interval.isNegative() && !interval.isZero(), "Interval must be positive.");
+            this.interval = interval;
+            return this;
+        }
+
+        /**
+         * Sets the number of queued events that starts a flush before the next
+         * periodic flush. The default is 500.
+         */
+        public Builder threshold(int threshold) {
+            Preconditions.checkArgument(threshold > 0, "Threshold must be positive.");
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of unwritten events, including events that
+         * failed to be written. Events appended while the log is full are
+         * dropped, which bounds memory use while the database is unavailable.
+         * The default is 100,000.
+         */
+        public Builder capacity(int capacity) {
+            Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets the time events are kept before their partition is compacted.
+         * By default, events are kept forever.
+         */
+        public Builder retention(Duration retention) {
+            Preconditions.checkArgument(!retention.isNegative() && !retention.isZero(), "Retention must be positive.");
+            this.retention = retention;
+            return this;
+        }
+
+        /**
+         * Sets the range of time covered by each partition, which is the unit
+         * of compaction. Partitions are aligned to the epoch. The default is 1
+         * day.
+         */
+        public Builder partition(Duration partition) {
+            Preconditions.checkArgument(partition.toMillis() > 0, "Partition must be at least 1 millisecond.");
+            this.partition = partition;
+            return this;
+        }
+
+        /**
+         * Sets the summarizer called with the events of each partition before
+         * it is deleted.
+         */
+        public Builder summarizer(Summarizer summarizer) {
+            this.summarizer = summarizer;
+            return this;
+        }
+
+        /**
+         * Creates an EventLog from this builder for the given service,
+         * creating the table if it does not exist.
+         *
+         * @throws SQLException If a database error occurs
+         */
+        public EventLog build(DatabaseService service) throws SQLException {
+            return new EventLog(this, service);
+        }
+
+    }
+
+}
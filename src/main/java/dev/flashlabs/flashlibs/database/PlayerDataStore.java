@@ -0,0 +1,447 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.filter.IsCancelled;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+import org.spongepowered.api.plugin.PluginContainer;
+import org.spongepowered.api.util.Tristate;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Represents an in-memory store of data for online players, which is loaded
+ * from the database when a player logs in and saved once modified. Reads are
+ * served from memory and never access the database, so they are safe to use
+ * on the main thread.
+ *
+ * <p>Data is loaded asynchronously during authentication, before the player
+ * joins the server. Modified data is marked as dirty and saved as a batch
+ * periodically and when the player disconnects, after which the data of
+ * offline players is evicted. Data that fails to save remains dirty and is
+ * retried on the next save, except for data rejected by the database (such
+ * as a constraint violation), which is logged and skipped so that it cannot
+ * prevent other players from being saved. If authentication or login is
+ * cancelled, the player is treated as disconnected.</p>
+ *
+ * <p>Modifications are applied within the store's map, so they cannot be
+ * lost to a concurrent eviction.</p>
+ *
+ * @see DatabaseService
+ */
+public final class PlayerDataStore<T> implements AutoCloseable {
+
+    private final DatabaseService service;
+    private final RowMapper<T> mapper;
+    private final String select;
+    @Nullable private final Function<UUID, T> defaults;
+    @Nullable private final String save;
+    @Nullable private final BiFunction<UUID, T, Object[]> args;
+    private final ConcurrentMap<UUID, Entry> entries = Maps.newConcurrentMap();
+    private final ScheduledFuture<?> task;
+    @Nullable private final PluginContainer plugin;
+
+    private PlayerDataStore(Builder<T> builder, DatabaseService service, @Nullable PluginContainer plugin) {
+        this.service = service;
+        mapper = builder.mapper;
+        select = builder.select;
+        defaults = builder.defaults;
+        save = builder.save;
+        args = builder.args;
+        task = service.schedule(builder.interval, () -> {
+            flush();
+            return null;
+        });
+        service.register(this);
+        this.plugin = plugin;
+        if (plugin != null) {
+            Sponge.getEventManager().registerListeners(plugin, this);
+        }
+    }
+
+    /**
+     * Starts loading the data of players while they authenticate.
+     */
+    @Listener(order = Order.POST)
+    public void onAuth(ClientConnectionEvent.Auth event) {
+        acquire(event.getProfile().getUniqueId(), true);
+    }
+
+    /**
+     * Releases the data of players whose authentication was cancelled after
+     * it started loading, as no disconnect event follows.
+     */
+    @Listener(order = Order.POST)
+    @IsCancelled(Tristate.TRUE)
+    public void onAuthCancelled(ClientConnectionEvent.Auth event) {
+        UUID uuid = event.getProfile().getUniqueId();
+        if (!Sponge.getServer().getPlayer(uuid).isPresent()) {
+            release(uuid);
+        }
+    }
+
+    /**
+     * Releases the data of players whose login was cancelled, as no disconnect
+     * event follows.
+     */
+    @Listener(order = Order.POST)
+    @IsCancelled(Tristate.TRUE)
+    public void onLoginCancelled(ClientConnectionEvent.Login event) {
+        UUID uuid = event.getProfile().getUniqueId();
+        if (!Sponge.getServer().getPlayer(uuid).isPresent()) {
+            release(uuid);
+        }
+    }
+
+    /**
+     * Saves the data of players once they disconnect, which evicts the data
+     * once saved.
+     */
+    @Listener(order = Order.POST)
+    public void onDisconnect(ClientConnectionEvent.Disconnect event) {
+        release(event.getTargetEntity().getUniqueId());
+    }
+
+    /**
+     * Marks the given player as offline and saves their data, which evicts
+     * the data once saved.
+     */
+    private void release(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry != null) {
+            entry.online = false;
+            entry.loaded.whenComplete((v, t) -> {
+                try {
+                    service.submit(() -> {
+                        save(Lists.newArrayList(entry));
+                        return null;
+                    }, false).exceptionally(e -> {
+                        service.getLogger().error("Failed to save player data for " + uuid + ".", e);
+                        return null;
+                    });
+                } catch (RejectedExecutionException e) {
+                    //The data remains dirty and is saved by the next periodic save.
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the entry for the given player, creating an entry and starting
+     * to load it if absent.
+     */
+    private Entry acquire(UUID uuid, boolean online) {
+        return acquire(uuid, online, e -> {});
+    }
+
+    /**
+     * Returns the entry for the given player as in {@link #acquire(UUID,
+     * boolean)}, applying the given action to the entry within the map so
+     * that it cannot be evicted concurrently.
+     */
+    private Entry acquire(UUID uuid, boolean online, Consumer<Entry> action) {
+        AtomicReference<Entry> created = new AtomicReference<>();
+        Entry entry = entries.compute(uuid, (k, e) -> {
+            if (e != null) {
+                e.online |= online;
+            } else {
+                e = new Entry(uuid, online);
+                created.set(e);
+            }
+            action.accept(e);
+            return e;
+        });
+        if (created.get() != null) {
+            entry.load();
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the loaded data of the given player, which is empty if the
+     * player is not loaded or has no data and no defaults were provided.
+     * This never accesses the database.
+     */
+    public Optional<T> get(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        return entry != null ? Optional.ofNullable(entry.value) : Optional.empty();
+    }
+
+    /**
+     * Returns the data of the given player, loading it asynchronously if not
+     * already loaded. This can be used for offline players, whose data is
+     * evicted on the next periodic save unless modified.
+     */
+    public CompletableFuture<Optional<T>> load(UUID uuid) {
+        return acquire(uuid, false).loaded.thenApply(Optional::ofNullable);
+    }
+
+    /**
+     * Sets the data of the given player and marks it as dirty. If the player
+     * is still being loaded, the loaded data is discarded.
+     *
+     * @throws IllegalStateException If no save statement was provided
+     */
+    public void set(UUID uuid, T value) {
+        Preconditions.checkState(save != null, "No save statement was provided.");
+        acquire(uuid, false, e -> {
+            synchronized (e) {
+                e.value = value;
+                e.version.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Updates the loaded data of the given player with the given function and
+     * marks it as dirty, returning the updated data. If the player is not
+     * loaded, nothing is updated. The function must not access this store.
+     *
+     * @throws IllegalStateException If no save statement was provided
+     */
+    public Optional<T> update(UUID uuid, UnaryOperator<T> function) {
+        Preconditions.checkState(save != null, "No save statement was provided.");
+        AtomicReference<T> updated = new AtomicReference<>();
+        entries.computeIfPresent(uuid, (k, e) -> {
+            synchronized (e) {
+                if (e.value != null) {
+                    e.value = function.apply(e.value);
+                    e.version.incrementAndGet();
+                    updated.set(e.value);
+                }
+            }
+            return e;
+        });
+        return Optional.ofNullable(updated.get());
+    }
+
+    /**
+     * Marks the loaded data of the given player as dirty, which should be
+     * called after modifying mutable data.
+     *
+     * @throws IllegalStateException If no save statement was provided
+     */
+    public void markDirty(UUID uuid) {
+        Preconditions.checkState(save != null, "No save statement was provided.");
+        entries.computeIfPresent(uuid, (k, e) -> {
+            e.version.incrementAndGet();
+            return e;
+        });
+    }
+
+    /**
+     * Saves all dirty data as a batch within a single transaction, and then
+     * evicts the data of offline players that is no longer dirty. If the batch
+     * fails, the data of each player is saved separately so that data rejected
+     * by the database is logged and skipped.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public void flush() throws SQLException {
+        save(entries.values());
+    }
+
+    private synchronized void save(Collection<Entry> candidates) throws SQLException {
+        List<Entry> dirty = candidates.stream()
+                .filter(e -> e.loaded.isDone() && e.isDirty())
+                .collect(Collectors.toList());
+        if (save != null && args != null && !dirty.isEmpty()) {
+            long[] versions = new long[dirty.size()];
+            List<Object[]> rows = Lists.newArrayListWithCapacity(dirty.size());
+            for (int i = 0; i < dirty.size(); i++) {
+                Entry entry = dirty.get(i);
+                versions[i] = entry.version.get();
+                T value = entry.value;
+                if (value != null) {
+                    rows.add(args.apply(entry.uuid, value));
+                }
+            }
+            service.batchSkipping(save, rows, Function.identity());
+            for (int i = 0; i < dirty.size(); i++) {
+                dirty.get(i).saved = versions[i];
+            }
+        }
+        for (Entry entry : candidates) {
+            if (!entry.online && entry.loaded.isDone()) {
+                entries.computeIfPresent(entry.uuid, (k, e) -> e == entry && !e.online && !e.isDirty() ? null : e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of players with loaded data.
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of players with data that has not been saved.
+     */
+    public int getDirty() {
+        return (int) entries.values().stream().filter(Entry::isDirty).count();
+    }
+
+    /**
+     * Stops listening for players, stops the periodic save, and saves all
+     * dirty data. This store is closed automatically when the service is
+     * closed.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    @Override
+    public void close() throws SQLException {
+        if (plugin != null) {
+            Sponge.getEventManager().unregisterListeners(this);
+        }
+        task.cancel(false);
+        service.unregister(this);
+        flush();
+    }
+
+    /**
+     * Creates a new builder for stores loading data with the given query,
+     * which has the player's {@link UUID} as its only parameter, and mapping
+     * the first row with the given mapper.
+     */
+    public static <T> Builder<T> builder(String select, RowMapper<T> mapper) {
+        return new Builder<>(select, mapper);
+    }
+
+    /**
+     * The data of a single player, which is dirty if the version has changed
+     * since it was last saved.
+     */
+    private final class Entry {
+
+        private final UUID uuid;
+        private final CompletableFuture<T> loaded = new CompletableFuture<>();
+        private final AtomicLong version = new AtomicLong();
+        @Nullable private volatile T value;
+        private volatile long saved = 0;
+        private volatile boolean online;
+
+        private Entry(UUID uuid, boolean online) {
+            this.uuid = uuid;
+            this.online = online;
+        }
+
+        private void load() {
+            try {
+                service.submit(() -> {
+                    List<T> rows = service.query(mapper, select, uuid);
+                    T loaded = !rows.isEmpty() ? rows.get(0) : defaults != null ? defaults.apply(uuid) : null;
+                    synchronized (this) {
+                        if (version.get() == 0) {
+                            value = loaded;
+                        }
+                    }
+                    return value;
+                }).whenComplete((v, t) -> {
+                    if (t != null) {
+                        service.getLogger().error("Failed to load player data for " + uuid + ".", t);
+                        entries.remove(uuid, this);
+                        loaded.completeExceptionally(t);
+                    } else {
+                        loaded.complete(v);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                entries.remove(uuid, this);
+                loaded.completeExceptionally(e);
+            }
+        }
+
+        private boolean isDirty() {
+            return version.get() != saved;
+        }
+
+    }
+
+    /**
+     * A builder for creating {@link PlayerDataStore}s.
+     */
+    public static final class Builder<T> {
+
+        private final String select;
+        private final RowMapper<T> mapper;
+        @Nullable private Function<UUID, T> defaults = null;
+        @Nullable private String save = null;
+        @Nullable private BiFunction<UUID, T, Object[]> args = null;
+        private Duration interval = Duration.ofMinutes(1);
+
+        private Builder(String select, RowMapper<T> mapper) {
+            this.select = select;
+            this.mapper = mapper;
+        }
+
+        /**
+         * Sets the function creating the data for players without any data in
+         * the database. By default, such players have no data.
+         */
+        public Builder<T> defaults(Function<UUID, T> defaults) {
+            this.defaults = defaults;
+            return this;
+        }
+
+        /**
+         * Sets the modification saving the data of a player, such as an
+         * upsert, and the function providing its arguments. By default, data
+         * cannot be modified.
+         */
+        public Builder<T> save(String sql, BiFunction<UUID, T, Object[]> args) {
+            save = sql;
+            this.args = args;
+            return this;
+        }
+
+        /**
+         * Sets the interval between periodic saves of dirty data, which also
+         * evicts the data of offline players. The default is 1 minute.
+         */
+        public Builder<T> interval(Duration interval) {
+            Preconditions.checkArgument(!interval.isNegative() && !interval.isZero(), "Interval must be positive.");
+            this.interval = interval;
+            return this;
+        }
+
+        /**
+         * Creates a PlayerDataStore from this builder for the given service,
+         * registering listeners for the given plugin.
+         */
+        public PlayerDataStore<T> build(DatabaseService service, PluginContainer plugin) {
+            return new PlayerDataStore<>(this, service, plugin);
+        }
+
+        /**
+         * Creates a PlayerDataStore from this builder for the given service
+         * without registering listeners, for use in tests.
+         */
+        PlayerDataStore<T> build(DatabaseService service) {
+            return new PlayerDataStore<>(this, service, null);
+        }
+
+    }
+
+}
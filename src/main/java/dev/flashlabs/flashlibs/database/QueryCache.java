@@ -0,0 +1,266 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Represents a cache of query results keyed by SQL and arguments, which is
+ * enabled through {@link DatabaseService.Builder#cache(long, Duration)}.
+ * Results are bounded in size and expire after a fixed duration.
+ *
+ * <p>Cached results are invalidated when a modification executed through the
+ * same service affects one of the tables read by the query. This is tracked by
+ * a version for each table, which is incremented on modification and compared
+ * against the versions recorded before the query was executed. Modifications
+ * whose tables cannot be determined, such as schema changes, invalidate all
+ * results. Modifications made outside of the service are not detected.</p>
+ */
+public final class QueryCache {
+
+    private static final String NAME = "[`\"\\[]?[\\w$]+[`\"\\]]?(?:\\.[`\"\\[]?[\\w$]+[`\"\\]]?)?";
+    private static final String ALIAS = "(?:\\s+(?:AS\\s+)?(?!(?:WHERE|JOIN|INNER|LEFT|RIGHT|FULL|OUTER|CROSS|NATURAL|ON|USING|GROUP|ORDER|HAVING|LIMIT|OFFSET|UNION|EXCEPT|INTERSECT|WINDOW|FOR)\\b)\\w+)?";
+    private static final Pattern READ = Pattern.compile("\\b(?:FROM|JOIN)\\s+(" + NAME + ALIAS + "(?:\\s*,\\s*" + NAME + ALIAS + ")*)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WRITE = Pattern.compile("^\\s*(?:(?:INSERT|REPLACE|MERGE)(?:\\s+OR\\s+\\w+|\\s+IGNORE)?\\s+INTO|UPDATE(?:\\s+OR\\s+\\w+)?|DELETE\\s+FROM|TRUNCATE(?:\\s+TABLE)?)\\s+(" + NAME + ")", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TABLE = Pattern.compile("^\\s*(" + NAME + ")");
+    private static final Pattern JOIN = Pattern.compile("\\bJOIN\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Cache<Key, Entry> results;
+    private final LoadingCache<String, Optional<ImmutableSet<String>>> reads;
+    private final LoadingCache<String, Optional<ImmutableSet<String>>> writes;
+    private final ConcurrentMap<String, AtomicLong> versions = Maps.newConcurrentMap();
+    private final AtomicLong global = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    QueryCache(long size, Duration expiration) {
+        results = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(expiration.toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+        reads = Caffeine.newBuilder().maximumSize(1000).build(QueryCache::parseReads);
+        writes = Caffeine.newBuilder().maximumSize(1000).build(QueryCache::parseWrites);
+    }
+
+    /**
+     * Parses the tables read by the given query, or empty if they could not be
+     * determined in which case the query is not cached.
+     */
+    static Optional<ImmutableSet<String>> parseReads(String sql) {
+        ImmutableSet.Builder<String> tables = ImmutableSet.builder();
+        Matcher matcher = READ.matcher(sql);
+        while (matcher.find()) {
+            for (String table : matcher.group(1).split(",")) {
+                Matcher name = TABLE.matcher(table);
+                if (name.find()) {
+                    tables.add(normalize(name.group(1)));
+                }
+            }
+        }
+        ImmutableSet<String> set = tables.build();
+        return set.isEmpty() ? Optional.empty() : Optional.of(set);
+    }
+
+    /**
+     * Parses the table modified by the given statement, or empty if it could
+     * not be determined in which case all results are invalidated. This
+     * includes statements with joins, which may modify multiple tables.
+     */
+    static Optional<ImmutableSet<String>> parseWrites(String sql) {
+        Matcher matcher = WRITE.matcher(sql);
+        return matcher.find() && !JOIN.matcher(sql).find() ? Optional.of(ImmutableSet.of(normalize(matcher.group(1)))) : Optional.empty();
+    }
+
+    /**
+     * Normalizes a table name by removing any schema, quotes, and case.
+     */
+    private static String normalize(String table) {
+        String name = table.substring(table.lastIndexOf('.') + 1);
+        return name.replaceAll("[`\"\\[\\]]", "").toLowerCase();
+    }
+
+    /**
+     * Returns the cached result for the given key, or loads and caches the
+     * result if absent or invalidated. Versions are recorded before loading so
+     * that modifications made during loading invalidate the result.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(@Nullable Object mapper, String sql, Object[] args, Callable<T> loader) throws SQLException {
+        Optional<ImmutableSet<String>> tables = reads.get(sql);
+        if (!tables.isPresent()) {
+            return call(loader);
+        }
+        Key key = new Key(mapper, sql, args.clone());
+        Entry entry = results.getIfPresent(key);
+        if (entry != null) {
+            if (entry.isValid()) {
+                hits.increment();
+                return (T) entry.value;
+            }
+            invalidations.increment();
+        }
+        misses.increment();
+        Entry loaded = new Entry(tables.get());
+        loaded.value = call(loader);
+        results.put(key, loaded);
+        return (T) loaded.value;
+    }
+
+    private static <T> T call(Callable<T> loader) throws SQLException {
+        try {
+            return loader.call();
+        } catch (SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * Invalidates all results reading from the tables modified by the given
+     * SQL statement.
+     */
+    void invalidate(String sql) {
+        Optional<ImmutableSet<String>> tables = writes.get(sql);
+        if (tables.isPresent()) {
+            tables.get().forEach(t -> version(t).incrementAndGet());
+        } else {
+            global.incrementAndGet();
+        }
+    }
+
+    /**
+     * Invalidates all results reading from the given table, which is used for
+     * modifications that were not executed through this service.
+     */
+    void invalidateTable(String table) {
+        version(normalize(table)).incrementAndGet();
+    }
+
+    private AtomicLong version(String table) {
+        return versions.computeIfAbsent(table, k -> new AtomicLong());
+    }
+
+    /**
+     * Invalidates all cached results.
+     */
+    public void invalidateAll() {
+        global.incrementAndGet();
+        results.invalidateAll();
+    }
+
+    /**
+     * Returns the approximate number of cached results.
+     */
+    public long getSize() {
+        return results.estimatedSize();
+    }
+
+    /**
+     * Returns the total number of queries served from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the total number of cacheable queries executed against the
+     * database.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the total number of cached results that were invalidated by a
+     * modification, which is counted when the result is next requested and
+     * reloaded. Results that expire or are evicted are not included.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * A cache key consisting of the mapper, SQL, and arguments.
+     */
+    private static final class Key {
+
+        @Nullable private final Object mapper;
+        private final String sql;
+        private final Object[] args;
+        private final int hash;
+
+        private Key(@Nullable Object mapper, String sql, Object[] args) {
+            this.mapper = mapper;
+            this.sql = sql;
+            this.args = args;
+            hash = 31 * (31 * Objects.hashCode(mapper) + sql.hashCode()) + Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return mapper == key.mapper && sql.equals(key.sql) && Arrays.deepEquals(args, key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    /**
+     * A cached result with the versions of the tables it was loaded from.
+     */
+    private final class Entry {
+
+        private final ImmutableSet<String> tables;
+        private final long[] versions;
+        private final long global;
+        @Nullable private Object value;
+
+        private Entry(ImmutableSet<String> tables) {
+            this.tables = tables;
+            versions = tables.stream().mapToLong(t -> version(t).get()).toArray();
+            global = QueryCache.this.global.get();
+        }
+
+        private boolean isValid() {
+            if (global != QueryCache.this.global.get()) {
+                return false;
+            }
+            int i = 0;
+            for (String table : tables) {
+                if (versions[i++] != version(table).get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.ImmutableList;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+/**
+ * Represents the replica sources of a {@link DatabaseService}, which selects
+ * the replica for each read according to the configured
+ * {@link DatabaseService.Routing}. The number of connections open to each
+ * replica is tracked for least busy routing.
+ */
+final class ReplicaSet {
+
+    private final ImmutableList<DataSource> sources;
+    private final DatabaseService.Routing routing;
+    private final AtomicInteger[] active;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ReplicaSet(List<DataSource> sources, DatabaseService.Routing routing) {
+        this.sources = ImmutableList.copyOf(sources);
+        this.routing = routing;
+        active = new AtomicInteger[sources.size()];
+        for (int i = 0; i < active.length; i++) {
+            active[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Opens a connection to the selected replica for the given service.
+     *
+     * @throws SQLException If a database access error occurs
+     */
+    Connection getConnection(DatabaseService service) throws SQLException {
+        int index = select();
+        AtomicInteger counter = active[index];
+        AtomicBoolean released = new AtomicBoolean(false);
+        counter.incrementAndGet();
+        try {
+            return new Connection(service, sources.get(index).getConnection(), () -> {
+                if (released.compareAndSet(false, true)) {
+                    counter.decrementAndGet();
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            counter.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private int select() {
+        int start = Math.floorMod(next.getAndIncrement(), active.length);
+        if (routing == DatabaseService.Routing.ROUND_ROBIN) {
+            return start;
+        }
+        //Starts from the round robin index so that ties are distributed evenly.
+        int index = start;
+        for (int i = 1; i < active.length; i++) {
+            int candidate = (start + i) % active.length;
+            if (active[candidate].get() < active[index].get()) {
+                index = candidate;
+            }
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,598 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Represents the fully materialized results of a query stored by column,
+ * which is a lightweight alternative to a {@link javax.sql.rowset.CachedRowSet}.
+ * Integer columns are stored as {@code int[]} or {@code long[]}, floating
+ * point columns as {@code double[]}, and text columns as a {@code String[]}
+ * with duplicate values shared. Other columns are stored as objects, where
+ * values bound to the connection are converted when materialized: blobs to
+ * {@code byte[]}, clobs to strings, and arrays to their contents.
+ *
+ * <p>Tables are immutable and can be shared between threads. Rows can be
+ * accessed randomly by index or sequentially through a {@link Cursor}, which
+ * should be created for each thread. Following JDBC, columns are indexed
+ * starting at 1, while rows are indexed starting at 0. Getters for primitives
+ * return 0 for {@code NULL} values, which can be checked with
+ * {@link #isNull(int, int)}. Mutable objects, such as byte arrays and dates,
+ * are copied when returned.</p>
+ *
+ * @see DatabaseService#table(String, Object...)
+ */
+public final class ResultTable {
+
+    private final ImmutableList<String> labels;
+    private final Column[] columns;
+    private final int rows;
+
+    private ResultTable(ImmutableList<String> labels, Column[] columns, int rows) {
+        this.labels = labels;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * Materializes all remaining rows of the given results into a table. The
+     * results are not closed.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public static ResultTable of(ResultSet results) throws SQLException {
+        ResultSetMetaData metadata = results.getMetaData();
+        ImmutableList.Builder<String> labels = ImmutableList.builder();
+        Builder[] builders = new Builder[metadata.getColumnCount()];
+        for (int i = 0; i < builders.length; i++) {
+            labels.add(metadata.getColumnLabel(i + 1));
+            builders[i] = builder(metadata.getColumnType(i + 1), i + 1);
+        }
+        int rows = 0;
+        while (results.next()) {
+            for (Builder builder : builders) {
+                builder.read(results, rows);
+            }
+            rows++;
+        }
+        Column[] columns = new Column[builders.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = builders[i].build(rows);
+        }
+        return new ResultTable(labels.build(), columns, rows);
+    }
+
+    private static Builder builder(int type, int index) {
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return new LongBuilder(index);
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleBuilder(index);
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                return new TextBuilder(index);
+            default:
+                return new ObjectBuilder(index);
+        }
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Returns the labels of the columns, in order.
+     */
+    public ImmutableList<String> getColumnLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the index of the column with the given label, ignoring case.
+     *
+     * @throws IllegalArgumentException If no column has the label
+     */
+    public int findColumn(String label) {
+        for (int i = 0; i < labels.size(); i++) {
+            if (labels.get(i).equalsIgnoreCase(label)) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("Column " + label + " is not present in the table.");
+    }
+
+    private Column column(int row, int column) {
+        Preconditions.checkElementIndex(row, rows, "Row");
+        Preconditions.checkElementIndex(column - 1, columns.length, "Column");
+        return columns[column - 1];
+    }
+
+    public boolean isNull(int row, int column) {
+        return column(row, column).isNull(row);
+    }
+
+    public int getInt(int row, int column) {
+        return (int) column(row, column).getLong(row);
+    }
+
+    public long getLong(int row, int column) {
+        return column(row, column).getLong(row);
+    }
+
+    public double getDouble(int row, int column) {
+        return column(row, column).getDouble(row);
+    }
+
+    @Nullable
+    public String getString(int row, int column) {
+        return column(row, column).getString(row);
+    }
+
+    /**
+     * Returns the value at the given row and column as an object. Mutable
+     * values, such as byte arrays and dates, are copied so that the table
+     * cannot be modified.
+     */
+    @Nullable
+    public Object getObject(int row, int column) {
+        return column(row, column).getObject(row);
+    }
+
+    /**
+     * Returns a new cursor positioned before the first row.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Represents sequential access to the rows of a table. Cursors are not
+     * thread-safe, but any number of cursors may be used for a table.
+     */
+    public final class Cursor {
+
+        private int row = -1;
+
+        private Cursor() {}
+
+        /**
+         * Advances to the next row, returning false if there are no more rows.
+         */
+        public boolean next() {
+            if (row < rows) {
+                row++;
+            }
+            return row < rows;
+        }
+
+        /**
+         * Returns the index of the current row.
+         */
+        public int getRow() {
+            return row;
+        }
+
+        public boolean isNull(int column) {
+            return ResultTable.this.isNull(row, column);
+        }
+
+        public int getInt(int column) {
+            return ResultTable.this.getInt(row, column);
+        }
+
+        public int getInt(String label) {
+            return getInt(findColumn(label));
+        }
+
+        public long getLong(int column) {
+            return ResultTable.this.getLong(row, column);
+        }
+
+        public long getLong(String label) {
+            return getLong(findColumn(label));
+        }
+
+        public double getDouble(int column) {
+            return ResultTable.this.getDouble(row, column);
+        }
+
+        public double getDouble(String label) {
+            return getDouble(findColumn(label));
+        }
+
+        @Nullable
+        public String getString(int column) {
+            return ResultTable.this.getString(row, column);
+        }
+
+        @Nullable
+        public String getString(String label) {
+            return getString(findColumn(label));
+        }
+
+        @Nullable
+        public Object getObject(int column) {
+            return ResultTable.this.getObject(row, column);
+        }
+
+        @Nullable
+        public Object getObject(String label) {
+            return getObject(findColumn(label));
+        }
+
+    }
+
+    /**
+     * A column of values with {@code NULL} values tracked in a bitset.
+     */
+    private abstract static class Column {
+
+        final BitSet nulls;
+
+        Column(BitSet nulls) {
+            this.nulls = nulls;
+        }
+
+        boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        abstract long getLong(int row);
+
+        abstract double getDouble(int row);
+
+        @Nullable
+        abstract Object getObject(int row);
+
+        @Nullable
+        String getString(int row) {
+            Object value = getObject(row);
+            return value != null ? value.toString() : null;
+        }
+
+    }
+
+    private static final class IntColumn extends Column {
+
+        private final int[] values;
+
+        private IntColumn(int[] values, BitSet nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        @Nullable
+        Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+    }
+
+    private static final class LongColumn extends Column {
+
+        private final long[] values;
+
+        private LongColumn(long[] values, BitSet nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        @Nullable
+        Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+    }
+
+    private static final class DoubleColumn extends Column {
+
+        private final double[] values;
+
+        private DoubleColumn(double[] values, BitSet nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        long getLong(int row) {
+            return (long) values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        @Nullable
+        Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+    }
+
+    private static final class StringColumn extends Column {
+
+        private final String[] values;
+
+        private StringColumn(String[] values, BitSet nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row] != null ? Long.parseLong(values[row]) : 0;
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row] != null ? Double.parseDouble(values[row]) : 0;
+        }
+
+        @Override
+        @Nullable
+        String getString(int row) {
+            return values[row];
+        }
+
+        @Override
+        @Nullable
+        Object getObject(int row) {
+            return values[row];
+        }
+
+    }
+
+    private static final class ObjectColumn extends Column {
+
+        private final Object[] values;
+
+        private ObjectColumn(Object[] values, BitSet nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        long getLong(int row) {
+            Object value = values[row];
+            return value instanceof Number ? ((Number) value).longValue() : value != null ? Long.parseLong(value.toString()) : 0;
+        }
+
+        @Override
+        double getDouble(int row) {
+            Object value = values[row];
+            return value instanceof Number ? ((Number) value).doubleValue() : value != null ? Double.parseDouble(value.toString()) : 0;
+        }
+
+        @Override
+        @Nullable
+        Object getObject(int row) {
+            Object value = values[row];
+            if (value instanceof byte[]) {
+                return ((byte[]) value).clone();
+            } else if (value instanceof Object[]) {
+                return ((Object[]) value).clone();
+            } else if (value instanceof Date) {
+                return ((Date) value).clone();
+            }
+            return value;
+        }
+
+    }
+
+    /**
+     * Collects the values of a single column while reading results.
+     */
+    private abstract static class Builder {
+
+        final int index;
+        final BitSet nulls = new BitSet();
+
+        Builder(int index) {
+            this.index = index;
+        }
+
+        abstract void read(ResultSet results, int row) throws SQLException;
+
+        abstract Column build(int rows);
+
+    }
+
+    private static final class LongBuilder extends Builder {
+
+        private long[] values = new long[16];
+        private boolean narrow = true;
+
+        private LongBuilder(int index) {
+            super(index);
+        }
+
+        @Override
+        void read(ResultSet results, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            long value = results.getLong(index);
+            if (results.wasNull()) {
+                nulls.set(row);
+            }
+            narrow &= value == (int) value;
+            values[row] = value;
+        }
+
+        @Override
+        Column build(int rows) {
+            if (narrow) {
+                int[] ints = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                    ints[i] = (int) values[i];
+                }
+                return new IntColumn(ints, nulls);
+            }
+            return new LongColumn(Arrays.copyOf(values, rows), nulls);
+        }
+
+    }
+
+    private static final class DoubleBuilder extends Builder {
+
+        private double[] values = new double[16];
+
+        private DoubleBuilder(int index) {
+            super(index);
+        }
+
+        @Override
+        void read(ResultSet results, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            values[row] = results.getDouble(index);
+            if (results.wasNull()) {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        Column build(int rows) {
+            return new DoubleColumn(Arrays.copyOf(values, rows), nulls);
+        }
+
+    }
+
+    /**
+     * Collects text values, sharing a single instance for equal values.
+     */
+    private static final class TextBuilder extends Builder {
+
+        private final Map<String, String> interned = Maps.newHashMap();
+        private String[] values = new String[16];
+
+        private TextBuilder(int index) {
+            super(index);
+        }
+
+        @Override
+        void read(ResultSet results, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            String value = results.getString(index);
+            if (value == null) {
+                nulls.set(row);
+            } else {
+                values[row] = interned.computeIfAbsent(value, v -> v);
+            }
+        }
+
+        @Override
+        Column build(int rows) {
+            return new StringColumn(Arrays.copyOf(values, rows), nulls);
+        }
+
+    }
+
+    private static final class ObjectBuilder extends Builder {
+
+        private Object[] values = new Object[16];
+
+        private ObjectBuilder(int index) {
+            super(index);
+        }
+
+        @Override
+        void read(ResultSet results, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            values[row] = convert(results.getObject(index));
+            if (values[row] == null) {
+                nulls.set(row);
+            }
+        }
+
+        /**
+         * Converts values that are only valid while the connection is open,
+         * such as LOBs, into plain values.
+         */
+        @Nullable
+        private static Object convert(@Nullable Object value) throws SQLException {
+            if (value instanceof Blob) {
+                Blob blob = (Blob) value;
+                byte[] bytes = blob.getBytes(1, Math.toIntExact(blob.length()));
+                blob.free();
+                return bytes;
+            } else if (value instanceof Clob) {
+                Clob clob = (Clob) value;
+                String string = clob.getSubString(1, Math.toIntExact(clob.length()));
+                clob.free();
+                return string;
+            } else if (value instanceof Array) {
+                Array array = (Array) value;
+                Object contents = array.getArray();
+                array.free();
+                return contents;
+            }
+            return value;
+        }
+
+        @Override
+        Column build(int rows) {
+            return new ObjectColumn(Arrays.copyOf(values, rows), nulls);
+        }
+
+    }
+
+}
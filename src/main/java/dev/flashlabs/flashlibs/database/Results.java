@@ -0,0 +1,150 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.Lists;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.annotation.Nullable;
+
+/**
+ * Utility class for streaming {@link ResultSet}s.
+ */
+final class Results {
+
+    private Results() {}
+
+    /**
+     * Maps all rows of the given results to a list using the given mapper,
+     * which is bound to the metadata of the results and codecs once. The
+     * results are closed afterwards.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    static <T> List<T> list(ResultSet results, RowMapper<T> mapper, CodecRegistry codecs) throws SQLException {
+        try (ResultSet rows = results) {
+            RowMapper<T> bound = mapper.bind(rows.getMetaData(), codecs);
+            List<T> list = Lists.newArrayList();
+            while (rows.next()) {
+                list.add(bound.map(rows));
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Creates a sequential stream of the rows of the given results mapped
+     * using the given mapper, which is bound to the metadata of the results
+     * once. The results and resource are closed as in
+     * {@link #stream(ResultSet, AutoCloseable)}.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    static <T> Stream<T> stream(ResultSet results, RowMapper<T> mapper, CodecRegistry codecs, @Nullable AutoCloseable resource) throws SQLException {
+        RowMapper<T> bound;
+        try {
+            bound = mapper.bind(results.getMetaData(), codecs);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                results.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return stream(results, resource).map(r -> {
+            try {
+                return bound.map(r);
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
+            }
+        });
+    }
+
+    /**
+     * Creates a sequential stream over the rows of the given results. Each
+     * element is the results itself positioned at the current row, so elements
+     * must be consumed before advancing. The results and the given resource,
+     * if present, are closed when the stream is closed or all rows have been
+     * consumed.
+     */
+    static Stream<ResultSet> stream(ResultSet results, @Nullable AutoCloseable resource) {
+        Cursor cursor = new Cursor(results, resource);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    private static final class Cursor extends Spliterators.AbstractSpliterator<ResultSet> {
+
+        private final ResultSet results;
+        @Nullable private final AutoCloseable resource;
+        private boolean closed = false;
+
+        private Cursor(ResultSet results, @Nullable AutoCloseable resource) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.results = results;
+            this.resource = resource;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ResultSet> action) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (results.next()) {
+                    action.accept(results);
+                    return true;
+                }
+            } catch (SQLException e) {
+                UncheckedSQLException exception = new UncheckedSQLException(e);
+                try {
+                    close();
+                } catch (RuntimeException suppressed) {
+                    exception.addSuppressed(suppressed);
+                }
+                throw exception;
+            }
+            close();
+            return false;
+        }
+
+        /**
+         * Closes the results and then the resource, throwing the first
+         * exception with any later exception suppressed.
+         */
+        private void close() {
+            if (!closed) {
+                closed = true;
+                Exception exception = null;
+                try {
+                    results.close();
+                } catch (SQLException e) {
+                    exception = e;
+                }
+                if (resource != null) {
+                    try {
+                        resource.close();
+                    } catch (Exception e) {
+                        if (exception == null) {
+                            exception = e;
+                        } else {
+                            exception.addSuppressed(e);
+                        }
+                    }
+                }
+                if (exception instanceof SQLException) {
+                    throw new UncheckedSQLException((SQLException) exception);
+                } else if (exception != null) {
+                    throw new IllegalStateException(exception);
+                }
+            }
+        }
+
+    }
+
+}
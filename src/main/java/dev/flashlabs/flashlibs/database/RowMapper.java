@@ -0,0 +1,65 @@
+package dev.flashlabs.flashlibs.database;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Represents a function mapping the current row of a {@link ResultSet} to an
+ * object. Mappers are bound to the metadata of a result set once before any
+ * rows are mapped, which allows column indices and other details to be
+ * resolved once instead of for every row.
+ *
+ * @see DatabaseService#query(RowMapper, String, Object...)
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Maps the current row of the given results to an object. Implementations
+     * should not advance the results.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    T map(ResultSet results) throws SQLException;
+
+    /**
+     * Returns a mapper for results with the given metadata, which is used to
+     * map all rows of those results. The codecs are those of the service
+     * executing the query. The default implementation returns this mapper
+     * unchanged.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    default RowMapper<T> bind(ResultSetMetaData metadata, CodecRegistry codecs) throws SQLException {
+        return this;
+    }
+
+    /**
+     * Creates a mapper which creates instances of the given type through the
+     * constructor whose parameters match the columns of the results in order.
+     * Columns are read with the getter for the parameter type, including
+     * primitive getters, or the {@link Codec} registered for the type without
+     * any per-row reflection. Parameters whose codec has a width greater than
+     * 1 read multiple consecutive columns.
+     *
+     * @throws IllegalArgumentException If no constructor matches the results
+     */
+    static <T> RowMapper<T> of(Class<T> type) {
+        return new ConstructorMapper<>(type, null);
+    }
+
+    /**
+     * Creates a mapper which creates instances of the given type through the
+     * constructor whose parameters match the given columns in order. Column
+     * names are resolved to indices once per result set, and each parameter
+     * must use a codec with a width of 1.
+     *
+     * @throws IllegalArgumentException If no constructor matches the columns
+     * @see #of(Class)
+     */
+    static <T> RowMapper<T> of(Class<T> type, String... columns) {
+        return new ConstructorMapper<>(type, columns);
+    }
+
+}
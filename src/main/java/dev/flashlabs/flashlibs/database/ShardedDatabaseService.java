@@ -0,0 +1,196 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Represents a database split into multiple shards, each with its own
+ * {@link DatabaseService}, where rows are assigned to a shard by a key such as
+ * a player's UUID. Keys are assigned using consistent hashing with a number of
+ * virtual nodes for each shard, so adding a shard only moves the keys assigned
+ * to the new shard. Keys are hashed by their string representation.
+ *
+ * <p>Statements for a single key are executed on the shard for that key.
+ * Statements affecting all shards, such as queries across all keys or schema
+ * changes, are executed on every shard in parallel using the worker pool of
+ * each shard and then combined.</p>
+ */
+public final class ShardedDatabaseService implements AutoCloseable {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final ImmutableMap<String, DatabaseService> shards;
+    private final long[] points;
+    private final DatabaseService[] owners;
+
+    private ShardedDatabaseService(Builder builder) {
+        shards = ImmutableMap.copyOf(builder.shards);
+        int count = shards.size() * builder.nodes;
+        long[][] ring = new long[count][];
+        DatabaseService[] services = shards.values().toArray(new DatabaseService[0]);
+        int i = 0;
+        int index = 0;
+        for (String name : shards.keySet()) {
+            for (int node = 0; node < builder.nodes; node++) {
+                ring[i++] = new long[] {hash(name + "#" + node), index};
+            }
+            index++;
+        }
+        Arrays.sort(ring, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[count];
+        owners = new DatabaseService[count];
+        for (i = 0; i < count; i++) {
+            points[i] = ring[i][0];
+            owners[i] = services[(int) ring[i][1]];
+        }
+    }
+
+    private static long hash(String value) {
+        return HASH.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * Returns the shards of this service keyed by name.
+     */
+    public ImmutableMap<String, DatabaseService> getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the shard for the given key, which is the first virtual node on
+     * the ring at or after the hash of the key.
+     */
+    public DatabaseService getShard(Object key) {
+        int index = Arrays.binarySearch(points, hash(key.toString()));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Executes {@link DatabaseService#update(String, Object...)} on the shard
+     * for the given key.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public void update(Object key, String sql, Object... args) throws SQLException {
+        getShard(key).update(sql, args);
+    }
+
+    /**
+     * Executes {@link DatabaseService#query(RowMapper, String, Object...)} on
+     * the shard for the given key.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public <T> List<T> query(Object key, RowMapper<T> mapper, String sql, Object... args) throws SQLException {
+        return getShard(key).query(mapper, sql, args);
+    }
+
+    /**
+     * Executes {@link DatabaseService#inTransaction(SqlFunction)} on the shard
+     * for the given key. Transactions cannot span multiple shards.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public <T> T inTransaction(Object key, SqlFunction<Transaction, T> work) throws SQLException {
+        return getShard(key).inTransaction(work);
+    }
+
+    /**
+     * Executes a query on every shard in parallel and returns the combined
+     * rows, in the order the shards were added. Any ordering or aggregation in
+     * the query applies to each shard separately.
+     */
+    public <T> CompletableFuture<List<T>> queryAll(RowMapper<T> mapper, String sql, Object... args) {
+        List<CompletableFuture<List<T>>> futures = Lists.newArrayList();
+        for (DatabaseService shard : shards.values()) {
+            futures.add(shard.queryAsync(mapper, sql, args));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<T> rows = Lists.newArrayList();
+            futures.forEach(f -> rows.addAll(f.join()));
+            return rows;
+        });
+    }
+
+    /**
+     * Executes a modification on every shard in parallel, such as creating a
+     * table.
+     */
+    public CompletableFuture<Void> updateAll(String sql, Object... args) {
+        return CompletableFuture.allOf(shards.values().stream()
+                .map(s -> s.updateAsync(sql, args))
+                .toArray(CompletableFuture<?>[]::new));
+    }
+
+    /**
+     * Closes the services of all shards.
+     */
+    @Override
+    public void close() {
+        shards.values().forEach(DatabaseService::close);
+    }
+
+    /**
+     * Creates a new builder for sharded services.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder for creating {@link ShardedDatabaseService}s.
+     */
+    public static final class Builder {
+
+        private final Map<String, DatabaseService> shards = Maps.newLinkedHashMap();
+        private int nodes = 128;
+
+        private Builder() {}
+
+        /**
+         * Adds a shard with the given name, which determines the keys assigned
+         * to the shard and therefore must not change once data is stored.
+         */
+        public Builder shard(String name, DatabaseService service) {
+            Preconditions.checkArgument(!shards.containsKey(name), "Shard " + name + " already exists.");
+            shards.put(name, service);
+            return this;
+        }
+
+        /**
+         * Sets the number of virtual nodes for each shard, where more nodes
+         * distribute keys more evenly. The default is 128.
+         */
+        public Builder virtualNodes(int nodes) {
+            Preconditions.checkArgument(nodes > 0, "Virtual nodes must be positive.");
+            this.nodes = nodes;
+            return this;
+        }
+
+        /**
+         * Creates a ShardedDatabaseService from this builder.
+         *
+         * @throws IllegalStateException If no shards were added
+         */
+        public ShardedDatabaseService build() {
+            Preconditions.checkState(!shards.isEmpty(), "No shards were added.");
+            return new ShardedDatabaseService(this);
+        }
+
+    }
+
+}
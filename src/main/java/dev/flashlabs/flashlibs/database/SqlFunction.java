@@ -0,0 +1,22 @@
+package dev.flashlabs.flashlibs.database;
+
+import java.sql.SQLException;
+
+/**
+ * Represents a function that accepts one argument and produces a result, which
+ * may throw an {@link SQLException} while doing so. This is used for units of
+ * work that are executed against a {@link Connection} or {@link Transaction}.
+ *
+ * @see java.util.function.Function
+ */
+@FunctionalInterface
+public interface SqlFunction<T, R> {
+
+    /**
+     * Applies this function to the given argument.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    R apply(T t) throws SQLException;
+
+}
@@ -3,30 +3,47 @@ package dev.flashlabs.flashlibs.database;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /**
  * Represents a {@link PreparedStatement}, which contains a precompiled SQL
  * statement. Statements can be provided parameters and reused.
+ *
+ * <p>Statements are owned by the {@link Connection} that created them and are
+ * closed along with that connection.</p>
  */
 public final class Statement {
     
+    private final Connection connection;
+    private final String sql;
     private final PreparedStatement statement;
+    @Nullable private Object[] args = null;
+    @Nullable private ResultSet results = null;
 
-    Statement(PreparedStatement statement) {
+    Statement(Connection connection, String sql, PreparedStatement statement) {
+        this.connection = connection;
+        this.sql = sql;
         this.statement = statement;
     }
 
     /**
      * Sets the parameters for this statement using the provided arguments.
-     * Arguments are set in the same order as defined in the original statement.
+     * Arguments are set in the same order as defined in the original statement
+     * using the {@link Codec} for their type, and arguments whose codec has a
+     * width greater than 1 set multiple consecutive parameters.
      *
      * @throws SQLException If a database error occurs
-     * @see PreparedStatement#setObject(int, Object) 
+     * @see DatabaseService#getCodecs()
      */
     public Statement setParams(Object... args) throws SQLException {
-        for (int i = 0; i < args.length; i++) {
-            statement.setObject(i + 1, args[i]);
+        statement.clearParameters();
+        CodecRegistry codecs = connection.getService().getCodecs();
+        for (int i = 0, index = 1; i < args.length; i++) {
+            index += codecs.bind(statement, index, args[i]);
         }
+        this.args = args;
         return this;
     }
 
@@ -37,7 +54,8 @@ public final class Statement {
      * @throws SQLException If a database error occurs
      */
     public void update() throws SQLException {
-        statement.executeUpdate();
+        execute(PreparedStatement::executeUpdate);
+        connection.modified(sql);
     }
 
     /**
@@ -47,7 +65,181 @@ public final class Statement {
      * @throws SQLException If a database error occurs
      */
     public ResultSet query() throws SQLException {
-        return statement.executeQuery();
+        return executeQuery();
+    }
+
+    /**
+     * Executes this statement as a database query and returns the retrieved
+     * rows mapped using the given mapper.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public <T> List<T> query(RowMapper<T> mapper) throws SQLException {
+        return Results.list(executeQuery(), mapper, connection.getService().getCodecs());
+    }
+
+    /**
+     * Executes this statement as a database query and returns the retrieved
+     * results materialized into a table.
+     *
+     * @throws SQLException If a database error occurs
+     * @see ResultTable
+     */
+    public ResultTable table() throws SQLException {
+        try (ResultSet results = executeQuery()) {
+            return ResultTable.of(results);
+        }
+    }
+
+    /**
+     * Sets the parameters for this statement using the provided arguments and
+     * adds them to the batch of this statement.
+     *
+     * @throws SQLException If a database error occurs
+     * @see PreparedStatement#addBatch()
+     */
+    public Statement addBatch(Object... args) throws SQLException {
+        setParams(args);
+        statement.addBatch();
+        this.args = null;
+        return this;
+    }
+
+    /**
+     * Executes all parameters added to the batch of this statement as database
+     * modifications and returns the update counts of each one. The batch is
+     * cleared afterwards, even if an exception occurs.
+     *
+     * @throws SQLException If a database error occurs
+     * @see PreparedStatement#executeBatch()
+     */
+    public int[] executeBatch() throws SQLException {
+        int[] counts;
+        try {
+            counts = execute(PreparedStatement::executeBatch);
+        } catch (SQLException | RuntimeException e) {
+            statement.clearBatch();
+            try {
+                //Part of the batch may have been executed.
+                connection.modified(sql);
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        statement.clearBatch();
+        connection.modified(sql);
+        return counts;
+    }
+
+    /**
+     * Sets the number of rows fetched from the database at a time when
+     * iterating over the results of a query, where 0 uses the driver default.
+     *
+     * @throws SQLException If a database error occurs
+     * @see PreparedStatement#setFetchSize(int)
+     */
+    public Statement setFetchSize(int rows) throws SQLException {
+        statement.setFetchSize(rows);
+        return this;
+    }
+
+    /**
+     * Executes this statement as a database query and returns a stream over
+     * the retrieved rows. Each element is the {@link ResultSet} positioned at
+     * the current row, which is only valid until the stream advances. The
+     * results are closed when the stream is closed or fully consumed.
+     *
+     * @throws SQLException If a database error occurs
+     * @see #setFetchSize(int)
+     */
+    public Stream<ResultSet> stream() throws SQLException {
+        return stream((AutoCloseable) null);
+    }
+
+    /**
+     * Streams the results of this statement as in {@link #stream()}, also
+     * closing the given resource along with the results.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    Stream<ResultSet> stream(@Nullable AutoCloseable resource) throws SQLException {
+        return Results.stream(executeQuery(), resource);
+    }
+
+    private ResultSet executeQuery() throws SQLException {
+        results = execute(PreparedStatement::executeQuery);
+        return results;
+    }
+
+    /**
+     * Executes this statement with the given function, recording the time
+     * taken in the service's {@link DatabaseMetrics}. The service's thread
+     * guard is checked first.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    private <T> T execute(SqlFunction<PreparedStatement, T> execution) throws SQLException {
+        connection.getService().checkThread(sql);
+        connection.executing();
+        DatabaseMetrics metrics = connection.getService().getMetrics();
+        long start = System.nanoTime();
+        try {
+            T result = execution.apply(statement);
+            metrics.record(sql, args, System.nanoTime() - start, false);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            metrics.record(sql, args, System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    void clearBatch() throws SQLException {
+        statement.clearBatch();
+    }
+
+    /**
+     * Executes this statement as a database query and returns a stream over
+     * the retrieved rows mapped using the given mapper. The results are closed
+     * when the stream is closed or fully consumed.
+     *
+     * @throws SQLException If a database error occurs
+     * @see #stream()
+     */
+    public <T> Stream<T> stream(RowMapper<T> mapper) throws SQLException {
+        return stream(mapper, null);
+    }
+
+    /**
+     * Streams the results of this statement as in {@link #stream(RowMapper)},
+     * also closing the given resource along with the results.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    <T> Stream<T> stream(RowMapper<T> mapper, @Nullable AutoCloseable resource) throws SQLException {
+        return Results.stream(executeQuery(), mapper, connection.getService().getCodecs(), resource);
+    }
+
+    boolean isClosed() throws SQLException {
+        return statement.isClosed();
+    }
+
+    /**
+     * Returns whether the results of the last query executed by this
+     * statement are still open, in which case executing it again would close
+     * them.
+     */
+    boolean isBusy() throws SQLException {
+        return results != null && !results.isClosed();
+    }
+
+    /**
+     * Closes this statement and any open results.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    void close() throws SQLException {
+        statement.close();
     }
     
 }
\ No newline at end of file
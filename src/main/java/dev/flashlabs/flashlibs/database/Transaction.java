@@ -1,18 +1,28 @@
 package dev.flashlabs.flashlibs.database;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.Set;
 
 /**
  * Represents a {@link Connection} for database transactions. This transaction
  * can be committed multiple times and will automatically rollback any
- * uncommitted statements when auto closed (such as on an exception).
+ * uncommitted statements when auto closed (such as on an exception). If no
+ * statements were executed since the last commit, closing does not rollback.
  *
  * @see java.sql.Connection#setAutoCommit(boolean)
  */
 public final class Transaction extends Connection {
 
-    Transaction(java.sql.Connection connection) throws SQLException {
-        super(connection);
+    private final Set<String> modified = Sets.newHashSet();
+    private boolean pending = false;
+
+    Transaction(DatabaseService service, java.sql.Connection connection) throws SQLException {
+        super(service, connection);
         connection.setAutoCommit(false);
     }
 
@@ -23,6 +33,74 @@ public final class Transaction extends Connection {
      */
     public void commit() throws SQLException {
         connection.commit();
+        pending = false;
+        modified.forEach(this::invalidate);
+        modified.clear();
+    }
+
+    /**
+     * Rolls back any statements executed since the previous commit.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public void rollback() throws SQLException {
+        connection.rollback();
+        pending = false;
+        modified.clear();
+    }
+
+    /**
+     * Executes the given work as a nested unit of work within this transaction
+     * using a savepoint. If the work throws an exception, only the statements
+     * executed by the work are rolled back and the exception is rethrown.
+     *
+     * @throws SQLException If a database error occurs
+     * @see java.sql.Connection#setSavepoint()
+     */
+    public <T> T nest(SqlFunction<Transaction, T> work) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        pending = true;
+        Set<String> recorded = ImmutableSet.copyOf(modified);
+        T result;
+        try {
+            result = work.apply(this);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                connection.rollback(savepoint);
+                modified.retainAll(recorded);
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLFeatureNotSupportedException ignored) {
+            //The savepoint is released with the transaction instead.
+        }
+        return result;
+    }
+
+    @Override
+    void executing() {
+        pending = true;
+    }
+
+    /**
+     * Records modifications so that cached results are invalidated again once
+     * the modifications are committed, since results may have been cached
+     * from other connections in the meantime. Each modification is recorded in
+     * the {@link ChangeLog} only once per transaction.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    @Override
+    void modified(String sql) throws SQLException {
+        if (modified.add(sql)) {
+            super.modified(sql);
+        } else {
+            invalidate(sql);
+        }
     }
 
     /**
@@ -32,9 +110,14 @@ public final class Transaction extends Connection {
      */
     @Override
     public void close() throws SQLException {
-        connection.rollback();
-        connection.setAutoCommit(true);
-        connection.close();
+        try {
+            if (pending) {
+                rollback();
+            }
+            connection.setAutoCommit(true);
+        } finally {
+            super.close();
+        }
     }
 
 }
\ No newline at end of file
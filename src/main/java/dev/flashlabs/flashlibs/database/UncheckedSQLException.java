@@ -0,0 +1,24 @@
+package dev.flashlabs.flashlibs.database;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps an {@link SQLException} with an unchecked exception, which is used in
+ * contexts that do not support checked exceptions such as streams.
+ *
+ * @see java.io.UncheckedIOException
+ */
+public final class UncheckedSQLException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause);
+    }
+
+    @Override
+    public SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+
+}
@@ -0,0 +1,195 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Represents a bulk insert or update of rows in a table, where rows whose key
+ * columns match an existing row replace the other columns of that row. Rows
+ * are written with multi-row statements using the syntax of the database's
+ * {@link Dialect}, which is much faster than a statement for each row when
+ * saving many rows at once.
+ *
+ * <ul>
+ *     <li>SQLite and PostgreSQL use {@code INSERT ... ON CONFLICT DO UPDATE}
+ *     (SQLite 3.24 or later).</li>
+ *     <li>MySQL and MariaDB use {@code INSERT ... ON DUPLICATE KEY UPDATE}.</li>
+ *     <li>H2 uses {@code MERGE INTO ... KEY}.</li>
+ * </ul>
+ *
+ * <p>Each statement contains at most the service's batch size of rows and
+ * stays under the parameter limit of the database. Remaining rows are split
+ * into statements with a power of two of rows, so that only a few distinct
+ * statements are prepared. The key columns must have a primary key or unique
+ * constraint, rows written together must have distinct keys, and each value
+ * must be bound to a single parameter.</p>
+ */
+public final class Upsert {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final DatabaseService service;
+    private final ImmutableList<String> columns;
+    private final String prefix;
+    private final String row;
+    private final String suffix;
+    private final int size;
+    private final Map<Integer, String> statements = Maps.newConcurrentMap();
+
+    private Upsert(Builder builder, DatabaseService service) throws SQLException {
+        this.service = service;
+        columns = builder.columns;
+        Dialect dialect = service.getDialect();
+        String names = String.join(", ", columns);
+        String keys = String.join(", ", builder.keys);
+        List<String> values = columns.stream()
+                .filter(c -> !builder.keys.contains(c))
+                .collect(Collectors.toList());
+        switch (dialect) {
+            case SQLITE:
+            case POSTGRESQL:
+                prefix = "INSERT INTO " + builder.table + " (" + names + ") VALUES ";
+                suffix = " ON CONFLICT (" + keys + ") " + (values.isEmpty() ? "DO NOTHING" : "DO UPDATE SET "
+                        + values.stream().map(c -> c + " = excluded." + c).collect(Collectors.joining(", ")));
+                break;
+            case MYSQL:
+                prefix = "INSERT INTO " + builder.table + " (" + names + ") VALUES ";
+                suffix = " ON DUPLICATE KEY UPDATE " + (values.isEmpty() ? builder.keys.get(0) + " = " + builder.keys.get(0)
+                        : values.stream().map(c -> c + " = VALUES(" + c + ")").collect(Collectors.joining(", ")));
+                break;
+            case H2:
+                prefix = "MERGE INTO " + builder.table + " (" + names + ") KEY (" + keys + ") VALUES ";
+                suffix = "";
+                break;
+            default:
+                throw new UnsupportedOperationException("Upserts are not supported for this database.");
+        }
+        row = "(" + Strings.repeat("?, ", columns.size() - 1) + "?)";
+        size = Math.max(1, Math.min(service.getBatchSize(), dialect.getParameterLimit() / columns.size()));
+    }
+
+    /**
+     * Returns the columns written by this upsert, in the order of the values
+     * of each row.
+     */
+    public ImmutableList<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Opens a unique transaction to write the given rows, which is committed
+     * once all rows are written. Each row contains a value for each column in
+     * order.
+     *
+     * @throws SQLException If a database error occurs
+     * @throws IllegalArgumentException If a row has the wrong number of values
+     */
+    public void execute(Iterable<Object[]> rows) throws SQLException {
+        try (Transaction transaction = service.getTransaction()) {
+            execute(transaction, rows);
+            transaction.commit();
+        }
+    }
+
+    /**
+     * Writes the given rows using the given connection, such as a
+     * {@link Transaction} that is committed by the caller.
+     *
+     * @throws SQLException If a database error occurs
+     * @throws IllegalArgumentException If a row has the wrong number of values
+     */
+    public void execute(Connection connection, Iterable<Object[]> rows) throws SQLException {
+        int width = columns.size();
+        Object[] args = new Object[size * width];
+        int count = 0;
+        for (Object[] row : rows) {
+            Preconditions.checkArgument(row.length == width, "Expected " + width + " values, found " + row.length + ".");
+            System.arraycopy(row, 0, args, count * width, width);
+            if (++count == size) {
+                connection.update(getSql(count), args);
+                count = 0;
+            }
+        }
+        int offset = 0;
+        while (count > 0) {
+            int chunk = Integer.highestOneBit(count);
+            connection.update(getSql(chunk), Arrays.copyOfRange(args, offset * width, (offset + chunk) * width));
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    private String getSql(int rows) {
+        return statements.computeIfAbsent(rows, r -> prefix + String.join(", ", Collections.nCopies(r, row)) + suffix);
+    }
+
+    /**
+     * Creates a new builder for upserts into the given table.
+     */
+    public static Builder builder(String table) {
+        return new Builder(table);
+    }
+
+    /**
+     * A builder for creating {@link Upsert}s.
+     */
+    public static final class Builder {
+
+        private final String table;
+        private ImmutableList<String> columns = ImmutableList.of();
+        private ImmutableList<String> keys = ImmutableList.of();
+
+        private Builder(String table) {
+            Preconditions.checkArgument(IDENTIFIER.matcher(table).matches(), "Table must be a valid identifier.");
+            this.table = table;
+        }
+
+        /**
+         * Sets the columns written for each row, including the key columns.
+         */
+        public Builder columns(String... columns) {
+            for (String column : columns) {
+                Preconditions.checkArgument(IDENTIFIER.matcher(column).matches(), "Column " + column + " must be a valid identifier.");
+            }
+            this.columns = ImmutableList.copyOf(columns);
+            return this;
+        }
+
+        /**
+         * Sets the key columns identifying existing rows, which must have a
+         * primary key or unique constraint.
+         */
+        public Builder keys(String... keys) {
+            this.keys = ImmutableList.copyOf(keys);
+            return this;
+        }
+
+        /**
+         * Creates an Upsert from this builder for the given service.
+         *
+         * @throws SQLException If a database error occurs
+         * @throws IllegalStateException If no columns or keys were set, or
+         *     the keys are not columns
+         * @throws UnsupportedOperationException If the database's dialect is
+         *     not supported
+         */
+        public Upsert build(DatabaseService service) throws SQLException {
+            Preconditions.checkState(!columns.isEmpty(), "No columns were set.");
+            Preconditions.checkState(!keys.isEmpty(), "No keys were set.");
+            Preconditions.checkState(columns.containsAll(keys), "Keys must be included in the columns.");
+            return new Upsert(this, service);
+        }
+
+    }
+
+}
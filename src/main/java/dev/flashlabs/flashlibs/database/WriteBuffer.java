@@ -0,0 +1,210 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Represents a write-behind buffer for a single SQL modification that is
+ * executed frequently for the same entities, such as updating statistics. Each
+ * modification is associated with a key identifying the entity, and only the
+ * latest arguments for each key are kept until the buffer is flushed.
+ *
+ * <p>Pending modifications are flushed as a batch within a single transaction
+ * periodically, once the number of pending keys reaches the threshold, and when
+ * the buffer is closed. Modifications that fail to be written remain pending
+ * and are retried on the next flush unless they have since been replaced.
+ * Modifications rejected by the database because of their arguments, such as
+ * a constraint violation, are logged and dropped so that they do not prevent
+ * other keys from being written.</p>
+ *
+ * @see DatabaseService#batch(String, Iterable)
+ */
+public final class WriteBuffer<K> implements AutoCloseable {
+
+    private final DatabaseService service;
+    private final String sql;
+    private final int threshold;
+    private final ConcurrentMap<K, Object[]> pending = Maps.newConcurrentMap();
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+    private final ScheduledFuture<?> task;
+    private final LongAdder received = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    private WriteBuffer(Builder builder, DatabaseService service) {
+        this.service = service;
+        sql = builder.sql;
+        threshold = builder.threshold;
+        task = service.schedule(builder.interval, () -> {
+            flush();
+            return null;
+        });
+        service.register(this);
+    }
+
+    /**
+     * Sets the arguments of the modification for the given key, replacing any
+     * pending arguments for that key. If the number of pending keys reaches the
+     * threshold, a flush is started on the service's worker pool.
+     */
+    public void put(K key, Object... args) {
+        received.increment();
+        if (pending.put(key, args) != null) {
+            coalesced.increment();
+        } else if (pending.size() >= threshold && queued.compareAndSet(false, true)) {
+            try {
+                service.submit(() -> {
+                    queued.set(false);
+                    flush();
+                    return null;
+                }, false).exceptionally(t -> {
+                    service.getLogger().error("Failed to flush write buffer for " + sql + ".", t);
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                queued.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes all pending modifications as a batch within a single transaction.
+     * Modifications replaced while the flush is in progress remain pending,
+     * and modifications rejected by the database are dropped.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    public synchronized void flush() throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<K, Object[]>> entries = Lists.newArrayList(pending.entrySet());
+        int skipped = service.batchSkipping(sql, entries, Map.Entry::getValue).size();
+        for (Map.Entry<K, Object[]> entry : entries) {
+            pending.remove(entry.getKey(), entry.getValue());
+        }
+        written.add(entries.size() - skipped);
+        rejected.add(skipped);
+        flushes.increment();
+    }
+
+    /**
+     * Returns the number of keys with pending modifications.
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the total number of modifications received by this buffer.
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * Returns the total number of modifications that replaced a pending
+     * modification for the same key, and therefore were never written.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the total number of modifications written to the database.
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Returns the total number of modifications rejected by the database and
+     * dropped.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the total number of successful flushes.
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Stops the periodic flush and flushes all pending modifications. This
+     * buffer is closed automatically when the service is closed.
+     *
+     * @throws SQLException If a database error occurs
+     */
+    @Override
+    public void close() throws SQLException {
+        task.cancel(false);
+        service.unregister(this);
+        flush();
+    }
+
+    /**
+     * Creates a new builder for buffers executing the given SQL modification.
+     */
+    public static Builder builder(String sql) {
+        return new Builder(sql);
+    }
+
+    /**
+     * A builder for creating {@link WriteBuffer}s.
+     */
+    public static final class Builder {
+
+        private final String sql;
+        private Duration interval = Duration.ofSeconds(5);
+        private int threshold = 1000;
+
+        private Builder(String sql) {
+            this.sql = sql;
+        }
+
+        /**
+         * Sets the interval between periodic flushes. The default is 5
+         * seconds.
+         */
+        public Builder interval(Duration interval) {
+            Preconditions.checkArgument(!interval.isNegative() && !interval.isZero(), "Interval must be positive.");
+            this.interval = interval;
+            return this;
+        }
+
+        /**
+         * Sets the number of pending keys that starts a flush before the next
+         * periodic flush. The default is 1000.
+         */
+        public Builder threshold(int threshold) {
+            Preconditions.checkArgument(threshold > 0, "Threshold must be positive.");
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Creates a WriteBuffer from this builder for the given service.
+         */
+        public <K> WriteBuffer<K> build(DatabaseService service) {
+            return new WriteBuffer<>(this, service);
+        }
+
+    }
+
+}
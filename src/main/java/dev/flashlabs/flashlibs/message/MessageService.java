@@ -1,7 +1,9 @@
 package dev.flashlabs.flashlibs.message;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import dev.flashlabs.flashlibs.translation.TranslationService;
 import org.spongepowered.api.command.CommandSource;
@@ -9,29 +11,44 @@ import org.spongepowered.api.text.Text;
 
 import java.net.MalformedURLException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 /**
  * Provides an interface for retrieving {@link MessageTemplate}s with support
  * for translations. Messages are provided through a {@link TranslationService}
  * and cached to maximize reuse of the template.
+ *
+ * <p>Templates are cached separately for each locale by key, up to a maximum
+ * number of templates per locale. Locales are normalized to the locale of the
+ * {@link ResourceBundle} they resolve to, so locales such as {@code en_GB} and
+ * {@code en_US} share templates when only an {@code en} bundle exists.
+ * Reloading replaces all cached templates at once, so lookups during a reload
+ * never observe a partially cleared cache.</p>
  */
 public final class MessageService {
 
+    private static final int LOCALES = 256;
+
     private final TranslationService translations;
-    private final LoadingCache<Map.Entry<String, Locale>, MessageTemplate> cache;
+    private final int size;
+    private volatile State state;
 
-    private MessageService(TranslationService translations) {
-        this.translations = translations;
-        cache = Caffeine.newBuilder().build(k -> MessageTemplate.of(translations.getString(k.getKey(), k.getValue())));
+    private MessageService(Builder builder) {
+        translations = builder.translations;
+        size = builder.size;
+        state = new State();
     }
 
     /**
      * Creates a service delegating to the given {@link TranslationService}.
      */
     public static MessageService of(TranslationService translations) {
-        return new MessageService(translations);
+        return builder(translations).build();
     }
 
     /**
@@ -41,7 +58,7 @@ public final class MessageService {
      * @see TranslationService#of(String, Path)
      */
     public static MessageService of(String name, Path path) throws MalformedURLException {
-        return new MessageService(TranslationService.of(name, path));
+        return of(TranslationService.of(name, path));
     }
 
     /**
@@ -51,7 +68,29 @@ public final class MessageService {
      * @see TranslationService#getString(String, Locale)
      */
     public MessageTemplate get(String key, Locale locale) {
-        return cache.get(Maps.immutableEntry(key, locale));
+        Table table = state.locales.get(locale);
+        MessageTemplate template = table.templates.getIfPresent(key);
+        return template != null ? template : table.templates.get(key, table.loader);
+    }
+
+    /**
+     * Compiles the templates of every key in the bundles for the given locales
+     * in parallel, so messages do not need to be compiled when first sent.
+     * This should be called when the plugin starts and after reloading.
+     *
+     * @see TranslationService#getBundle(Locale)
+     */
+    public CompletableFuture<Void> warmup(Locale... locales) {
+        return CompletableFuture.allOf(Arrays.stream(locales)
+                .map(l -> CompletableFuture.runAsync(() -> translations.getBundle(l).keySet().parallelStream().forEach(k -> get(k, l))))
+                .toArray(CompletableFuture<?>[]::new));
+    }
+
+    /**
+     * Returns the number of templates cached for the given locale.
+     */
+    long getCached(Locale locale) {
+        return state.locales.get(locale).templates.estimatedSize();
     }
 
     /**
@@ -81,7 +120,79 @@ public final class MessageService {
      */
     public void reload() {
         translations.reload();
-        cache.invalidateAll();
+        state = new State();
+    }
+
+    /**
+     * Creates a new builder for services delegating to the given
+     * {@link TranslationService}.
+     */
+    public static Builder builder(TranslationService translations) {
+        return new Builder(translations);
+    }
+
+    /**
+     * The cached templates of every locale, which is replaced as a whole when
+     * reloading.
+     */
+    private final class State {
+
+        private final ConcurrentMap<Locale, Table> tables = Maps.newConcurrentMap();
+        private final LoadingCache<Locale, Table> locales = Caffeine.newBuilder().maximumSize(LOCALES).build(l -> {
+            Locale resolved = translations.getBundle(l).getLocale();
+            return tables.computeIfAbsent(resolved, Table::new);
+        });
+
+    }
+
+    /**
+     * The templates cached for the locale of a bundle, along with the loader
+     * compiling missing templates, which is created once so that lookups do
+     * not allocate.
+     */
+    private final class Table {
+
+        private final Locale locale;
+        private final Cache<String, MessageTemplate> templates;
+        private final Function<String, MessageTemplate> loader;
+
+        private Table(Locale locale) {
+            this.locale = locale;
+            templates = Caffeine.newBuilder().maximumSize(size).build();
+            loader = k -> MessageTemplate.of(translations.getString(k, this.locale));
+        }
+
+    }
+
+    /**
+     * A builder for creating {@link MessageService}s.
+     */
+    public static final class Builder {
+
+        private final TranslationService translations;
+        private int size = 1000;
+
+        private Builder(TranslationService translations) {
+            this.translations = translations;
+        }
+
+        /**
+         * Sets the maximum number of templates cached for each locale. The
+         * default is 1000.
+         */
+        public Builder size(int size) {
+            Preconditions.checkArgument(size > 0, "Size must be positive.");
+            this.size = size;
+            return this;
+        }
+
+        /**
+         * Creates a MessageService from this builder.
+         */
+        public MessageService build() {
+            return new MessageService(this);
+        }
+
     }
 
 }
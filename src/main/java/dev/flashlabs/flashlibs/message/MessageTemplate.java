@@ -1,10 +1,10 @@
 package dev.flashlabs.flashlibs.message;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import org.spongepowered.api.text.Text;
-import org.spongepowered.api.text.TextTemplate;
+import org.spongepowered.api.text.TextRepresentable;
 import org.spongepowered.api.text.format.TextFormat;
 import org.spongepowered.api.text.serializer.TextSerializers;
 
@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /**
  * Represents a reusable template for messages containing arguments. The
@@ -23,6 +24,11 @@ import java.util.regex.Pattern;
  * argument key. The format is optional {@code &}-style codes, and the key is
  * any kebab-case string (lowercase and hyphen only). Some examples are {@code
  * ${@player}}, {@code ${&6&l@player}}, and {@code ${&a@player-location}}.
+ *
+ * <p>Templates are compiled when created, with each use of an argument
+ * resolved to the index of its key in {@link #getArguments()}. Applying
+ * arguments through {@link #render(Object...)} or {@link #get(Object...)}
+ * therefore does not create any intermediate maps.</p>
  */
 public final class MessageTemplate {
 
@@ -30,10 +36,12 @@ public final class MessageTemplate {
     private static final Pattern PLACEHOLDER = Pattern.compile("((?:&[0-9a-fk-or])*)@([a-z-]+)");
     private static final Pattern FORMAT = Pattern.compile("&(?:([0-9a-f])|([k-o])|(r))");
 
-    private final TextTemplate template;
+    private final Object[] parts;
+    private final ImmutableList<String> arguments;
 
-    private MessageTemplate(TextTemplate template) {
-        this.template = template;
+    private MessageTemplate(Object[] parts, ImmutableList<String> arguments) {
+        this.parts = parts;
+        this.arguments = arguments;
     }
 
     /**
@@ -45,6 +53,7 @@ public final class MessageTemplate {
      */
     public static MessageTemplate of(String string) {
         List<Object> elements = Lists.newArrayList();
+        List<String> arguments = Lists.newArrayList();
         Matcher argument = ARGUMENT.matcher(string);
         int index = 0;
         TextFormat format = TextFormat.of();
@@ -56,18 +65,20 @@ public final class MessageTemplate {
             }
             Matcher placeholder = PLACEHOLDER.matcher(argument.group(1));
             if (placeholder.matches()) {
-                TextTemplate.Arg.Builder builder = TextTemplate.arg(placeholder.group(2));
-                if (placeholder.group(1) != null) {
-                    builder.format(TextSerializers.FORMATTING_CODE.deserialize(placeholder.group(1) + "?").getFormat());
+                String key = placeholder.group(2);
+                if (!arguments.contains(key)) {
+                    arguments.add(key);
                 }
-                elements.add(builder);
+                TextFormat slot = placeholder.group(1).isEmpty() ? TextFormat.of()
+                        : TextSerializers.FORMATTING_CODE.deserialize(placeholder.group(1) + "?").getFormat();
+                elements.add(new Slot(arguments.indexOf(key), key, slot));
             } else {
                 elements.add(TextSerializers.FORMATTING_CODE.deserialize(argument.group(1)));
             }
             index = argument.end();
         }
         elements.add(deserialize(string.substring(index), format));
-        return new MessageTemplate(TextTemplate.of(elements.toArray()));
+        return new MessageTemplate(elements.toArray(), ImmutableList.copyOf(arguments));
     }
 
     /**
@@ -97,13 +108,31 @@ public final class MessageTemplate {
     }
 
     /**
-     * Applies the given arguments to this template using the given map, adding
-     * any missing arguments to the map with {@code @key}. The {@param args} map
-     * is mutated in the process.
+     * Returns the keys of the arguments used by this template, in the order
+     * they first appear. This is the order of the values for
+     * {@link #render(Object...)}.
      */
-    private Text apply(Map<String, Object> args) {
-        template.getArguments().keySet().forEach(k -> args.putIfAbsent(k, "@" + k));
-        return template.apply(args).build();
+    public ImmutableList<String> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Gets this message with the given values applied by position, where each
+     * value corresponds to the key at the same index of
+     * {@link #getArguments()}. Extra values are ignored, and missing or null
+     * values are replaced with {@code @key}.
+     */
+    public Text render(Object... values) {
+        Text.Builder builder = Text.builder();
+        for (Object part : parts) {
+            if (part instanceof Slot) {
+                Slot slot = (Slot) part;
+                builder.append(slot.apply(slot.index < values.length ? values[slot.index] : null));
+            } else {
+                builder.append((Text) part);
+            }
+        }
+        return builder.build();
     }
 
     /**
@@ -111,13 +140,23 @@ public final class MessageTemplate {
      * ignored and uses of undefined arguments are replaced with {@code @key}.
      */
     public Text get(Map<String, Object> args) {
-        return apply(Maps.newHashMap(args));
+        Text.Builder builder = Text.builder();
+        for (Object part : parts) {
+            if (part instanceof Slot) {
+                Slot slot = (Slot) part;
+                builder.append(slot.apply(args.get(slot.key)));
+            } else {
+                builder.append((Text) part);
+            }
+        }
+        return builder.build();
     }
 
     /**
      * Gets this message with the given argument applied. Arguments are supplied
-     * by key-value pairs, raising an exception for an incomplete pair. Unused
-     * arguments are ignored and uses of undefined arguments are replaced with
+     * by key-value pairs, raising an exception for an incomplete pair. If a
+     * key is supplied multiple times, the last value is used. Unused arguments
+     * are ignored and uses of undefined arguments are replaced with
      * {@code @key}.
      *
      * @throws IllegalArgumentException If a given argument is missing a value.
@@ -126,11 +165,51 @@ public final class MessageTemplate {
         if (args.length % 2 == 1) {
             throw new IllegalArgumentException("Argument " + args[args.length - 1] + " is missing a value.");
         }
-        Map<String, Object> map = Maps.newHashMap();
-        for (int i = 1; i < args.length; i += 2) {
-            map.put(String.valueOf(args[i - 1]), args[i]);
+        Text.Builder builder = Text.builder();
+        for (Object part : parts) {
+            if (part instanceof Slot) {
+                Slot slot = (Slot) part;
+                Object value = null;
+                for (int i = args.length - 2; i >= 0; i -= 2) {
+                    if (slot.key.equals(String.valueOf(args[i]))) {
+                        value = args[i + 1];
+                        break;
+                    }
+                }
+                builder.append(slot.apply(value));
+            } else {
+                builder.append((Text) part);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * A use of an argument within a template, which applies the format of the
+     * argument to the given value.
+     */
+    private static final class Slot {
+
+        private final int index;
+        private final String key;
+        private final TextFormat format;
+        private final Text missing;
+
+        private Slot(int index, String key, TextFormat format) {
+            this.index = index;
+            this.key = key;
+            this.format = format;
+            missing = Text.of(format, "@" + key);
+        }
+
+        private Text apply(@Nullable Object value) {
+            if (value == null) {
+                return missing;
+            }
+            Text text = value instanceof TextRepresentable ? ((TextRepresentable) value).toText() : Text.of(value);
+            return format.isEmpty() ? text : Text.builder().format(format).append(text).build();
         }
-        return apply(map);
+
     }
 
 }
@@ -0,0 +1,51 @@
+package dev.flashlabs.flashlibs.translation;
+
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Represents an immutable map of strings using open addressing with linear
+ * probing, where keys and values are stored in parallel arrays. The capacity
+ * is a power of two at most half full, so most lookups are a single probe.
+ * Tables can be read concurrently without synchronization.
+ */
+final class StringTable {
+
+    private final String[] keys;
+    private final String[] values;
+    private final int mask;
+
+    StringTable(Map<String, String> map) {
+        int capacity = Integer.highestOneBit(Math.max(map.size(), 1) * 2 - 1) << 1;
+        keys = new String[capacity];
+        values = new String[capacity];
+        mask = capacity - 1;
+        map.forEach((key, value) -> {
+            int index = index(key);
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = value;
+        });
+    }
+
+    private int index(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the value for the given key, or null if it is not present.
+     */
+    @Nullable
+    String get(String key) {
+        for (int index = index(key); keys[index] != null; index = (index + 1) & mask) {
+            if (keys[index].equals(key)) {
+                return values[index];
+            }
+        }
+        return null;
+    }
+
+}
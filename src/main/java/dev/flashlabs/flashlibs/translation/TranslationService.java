@@ -1,23 +1,37 @@
 package dev.flashlabs.flashlibs.translation;
 
+import com.google.common.collect.Maps;
+
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Path;
 import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Provides an interface for reading translations from {@link ResourceBundle}s
  * through the provided class loader and name. Translations may be formatted as
  * property files as well as in Hocon (.conf), Json (.json), and Yaml (.yaml).
  *
+ * <p>Strings are read from a table for each locale, which contains every key
+ * of the locale's bundle with values from parent bundles merged in. Tables
+ * are built on first use and are immutable, so lookups are a single hash
+ * probe without synchronization and are safe from any thread. Reloading
+ * replaces all tables at once.</p>
+ *
  * @see ResourceBundle
  */
 public final class TranslationService {
 
+    private static final int LOCALES = 256;
+
     private final String name;
     private final ClassLoader loader;
+    private volatile Tables tables = new Tables();
 
     private TranslationService(String name, ClassLoader loader) {
         this.name = name;
@@ -56,15 +70,64 @@ public final class TranslationService {
      * If the given key is not present, the key itself is returned.
      */
     public String getString(String key, Locale locale) {
-        ResourceBundle bundle = getBundle(locale);
-        return bundle.containsKey(key) ? bundle.getObject(key).toString() : key;
+        String value = getTable(locale).get(key);
+        return value != null ? value : key;
+    }
+
+    /**
+     * Returns the table for the given locale, which is shared by all locales
+     * resolving to the same bundle. Tables are only cached for a limited
+     * number of requested locales, after which other locales are resolved
+     * through {@link #getBundle(Locale)} on each lookup.
+     *
+     * @throws MissingResourceException If no resource bundle exists
+     */
+    private StringTable getTable(Locale locale) {
+        Tables tables = this.tables;
+        StringTable table = tables.requested.get(locale);
+        if (table == null) {
+            ResourceBundle bundle = getBundle(locale);
+            table = tables.resolved.computeIfAbsent(bundle.getLocale(), l -> flatten(bundle));
+            if (tables.requested.size() < LOCALES) {
+                tables.requested.putIfAbsent(locale, table);
+            }
+        }
+        return table;
+    }
+
+    private static StringTable flatten(ResourceBundle bundle) {
+        Map<String, String> values = Maps.newHashMap();
+        for (String key : bundle.keySet()) {
+            try {
+                Object value = bundle.getObject(key);
+                if (value != null) {
+                    values.put(key, value.toString());
+                }
+            } catch (MissingResourceException ignored) {
+                //Keys without a value are treated as absent.
+            }
+        }
+        return new StringTable(values);
     }
 
     /**
-     * Reloads the resource bundle cache corresponding to this class loader.
+     * Reloads the resource bundle cache corresponding to this class loader,
+     * including the tables built from the bundles.
      */
     public void reload() {
         ResourceBundle.clearCache(loader);
+        tables = new Tables();
+    }
+
+    /**
+     * The tables built since the last reload, by requested locale and by the
+     * locale of the bundle it resolved to.
+     */
+    private static final class Tables {
+
+        private final ConcurrentMap<Locale, StringTable> requested = Maps.newConcurrentMap();
+        private final ConcurrentMap<Locale, StringTable> resolved = Maps.newConcurrentMap();
+
     }
 
 }
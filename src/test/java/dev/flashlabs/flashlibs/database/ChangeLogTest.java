@@ -0,0 +1,94 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import javax.sql.DataSource;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class ChangeLogTest {
+
+    private static final RowMapper<String> NAME = results -> results.getString(1);
+
+    private DatabaseService first;
+    private DatabaseService second;
+    private ChangeLog firstLog;
+    private ChangeLog secondLog;
+
+    @BeforeAll
+    void setup() throws SQLException {
+        DataSource source = H2.source();
+        first = DatabaseService.builder(source).build();
+        second = DatabaseService.builder(source).cache(100, Duration.ofHours(1)).build();
+        first.update("CREATE TABLE Data (name VARCHAR(16))");
+        first.update("INSERT INTO Data VALUES (?)", "initial");
+        firstLog = ChangeLog.builder().interval(Duration.ofHours(1)).build(first);
+        secondLog = ChangeLog.builder().interval(Duration.ofHours(1)).build(second);
+    }
+
+    @AfterAll
+    void close() {
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void testListeners() throws SQLException {
+        List<String> changes = Lists.newArrayList();
+        List<String> own = Lists.newArrayList();
+        secondLog.addListener((table, key) -> changes.add(table + ":" + key));
+        firstLog.addListener((table, key) -> own.add(table + ":" + key));
+        firstLog.record("Players", "uuid");
+        firstLog.record("Players", null);
+        secondLog.poll();
+        firstLog.poll();
+        Assertions.assertEquals(Lists.newArrayList("Players:uuid", "Players:null"), changes);
+        Assertions.assertTrue(own.isEmpty());
+    }
+
+    @Test
+    void testRecordsModifications() throws SQLException {
+        List<String> changes = Lists.newArrayList();
+        secondLog.poll();
+        secondLog.addListener((table, key) -> changes.add(table + ":" + key));
+        first.update("CREATE TABLE Recorded (name VARCHAR(16))");
+        first.update("INSERT INTO Recorded VALUES (?)", "first");
+        try (Transaction transaction = first.getTransaction()) {
+            transaction.update("INSERT INTO Recorded VALUES (?)", "second");
+            transaction.update("INSERT INTO Recorded VALUES (?)", "third");
+            transaction.commit();
+        }
+        try (Transaction transaction = first.getTransaction()) {
+            transaction.update("DELETE FROM Recorded");
+        }
+        first.update("UPDATE Recorded SET name = (SELECT MAX(d.name) FROM Data d JOIN Data e ON d.name = e.name)");
+        secondLog.poll();
+        Assertions.assertEquals(Lists.newArrayList("recorded:null", "recorded:null"), changes);
+    }
+
+    @Test
+    void testSingleLogPerService() {
+        Assertions.assertThrows(IllegalStateException.class, () -> ChangeLog.builder().table("Other").build(first));
+    }
+
+    @Test
+    void testInvalidatesQueryCache() throws SQLException {
+        Assertions.assertEquals("initial", second.query(NAME, "SELECT name FROM Data").get(0));
+        try (Transaction transaction = first.getTransaction()) {
+            transaction.update("UPDATE Data SET name = ?", "updated");
+            firstLog.record(transaction, "Data", null);
+            transaction.commit();
+        }
+        Assertions.assertEquals("initial", second.query(NAME, "SELECT name FROM Data").get(0));
+        secondLog.poll();
+        Assertions.assertEquals("updated", second.query(NAME, "SELECT name FROM Data").get(0));
+    }
+
+}
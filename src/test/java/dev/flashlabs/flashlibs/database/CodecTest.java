@@ -0,0 +1,148 @@
+package dev.flashlabs.flashlibs.database;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class CodecTest {
+
+    private DatabaseService service;
+
+    @BeforeAll
+    void setup() throws SQLException {
+        service = H2.builder()
+                .codec(UUID.class, Codec.UUID_LONGS)
+                .codec(Instant.class, Codec.INSTANT_MILLIS)
+                .codec(Rank.class, Codec.ofOrdinal(Rank.class))
+                .build();
+        service.update("CREATE TABLE Players (id_most BIGINT, id_least BIGINT, name VARCHAR(16), joined BIGINT, rank INT)");
+    }
+
+    @AfterAll
+    void close() {
+        service.close();
+    }
+
+    @Test
+    void testRoundTrip() throws SQLException {
+        UUID uuid = UUID.randomUUID();
+        Instant joined = Instant.ofEpochMilli(1234);
+        service.update("INSERT INTO Players VALUES (?, ?, ?, ?, ?)", uuid, "first", joined, Rank.ADMIN);
+        List<Player> players = service.query(RowMapper.of(Player.class), "SELECT * FROM Players WHERE name = ?", "first");
+        Assertions.assertEquals(1, players.size());
+        Assertions.assertEquals(uuid, players.get(0).uuid);
+        Assertions.assertEquals(joined, players.get(0).joined);
+        Assertions.assertEquals(Rank.ADMIN, players.get(0).rank);
+        List<Integer> ranks = service.query(r -> r.getInt(1), "SELECT rank FROM Players WHERE name = ?", "first");
+        Assertions.assertEquals(Rank.ADMIN.ordinal(), ranks.get(0));
+    }
+
+    @Test
+    void testTypedNullUsesCodecWidth() throws SQLException {
+        service.update("INSERT INTO Players VALUES (?, ?, ?, ?, ?)", Codec.nullOf(UUID.class), "second", null, null);
+        List<Player> players = service.query(RowMapper.of(Player.class), "SELECT * FROM Players WHERE name = ?", "second");
+        Assertions.assertEquals(1, players.size());
+        Assertions.assertNull(players.get(0).uuid);
+        Assertions.assertNull(players.get(0).joined);
+        Assertions.assertNull(players.get(0).rank);
+    }
+
+    @Test
+    void testUntypedNullUsesSingleParameter() {
+        Assertions.assertThrows(SQLException.class, () ->
+                service.update("INSERT INTO Players VALUES (?, ?, ?, ?, ?)", null, "third", null, null));
+    }
+
+    @Test
+    void testNamedColumnsRejectWideCodecs() throws SQLException {
+        service.update("INSERT INTO Players VALUES (?, ?, ?, ?, ?)", UUID.randomUUID(), "fourth", Instant.EPOCH, Rank.MEMBER);
+        Assertions.assertThrows(IllegalArgumentException.class, () ->
+                service.query(RowMapper.of(Player.class, "id_most", "name", "joined", "rank"), "SELECT * FROM Players"));
+        List<Named> named = service.query(RowMapper.of(Named.class, "name", "rank"), "SELECT * FROM Players WHERE name = ?", "fourth");
+        Assertions.assertEquals(Rank.MEMBER, named.get(0).rank);
+    }
+
+    @Test
+    void testBinaryUuid() throws SQLException {
+        try (DatabaseService binary = H2.builder().codec(UUID.class, Codec.UUID_BINARY).build()) {
+            binary.update("CREATE TABLE Ids (id BINARY(16))");
+            UUID uuid = UUID.randomUUID();
+            binary.update("INSERT INTO Ids VALUES (?)", uuid);
+            Assertions.assertEquals(16, binary.query(r -> r.getBytes(1), "SELECT id FROM Ids").get(0).length);
+            Assertions.assertEquals(uuid, binary.query(RowMapper.of(Id.class), "SELECT id FROM Ids").get(0).uuid);
+        }
+    }
+
+    @Test
+    void testNativeUuidByDefault() throws SQLException {
+        try (DatabaseService defaults = H2.service()) {
+            defaults.update("CREATE TABLE Ids (id UUID)");
+            UUID uuid = UUID.randomUUID();
+            defaults.update("INSERT INTO Ids VALUES (?)", uuid);
+            Assertions.assertEquals(uuid, defaults.query(r -> r.getObject(1), "SELECT id FROM Ids").get(0));
+            Assertions.assertEquals(uuid, defaults.query(RowMapper.of(Id.class), "SELECT id FROM Ids WHERE id = ?", uuid).get(0).uuid);
+        }
+    }
+
+    @Test
+    void testStringUuid() throws SQLException {
+        try (DatabaseService strings = H2.builder().codec(UUID.class, Codec.UUID_STRING).build()) {
+            strings.update("CREATE TABLE Ids (id CHAR(36))");
+            UUID uuid = UUID.randomUUID();
+            strings.update("INSERT INTO Ids VALUES (?)", uuid);
+            Assertions.assertEquals(uuid.toString(), strings.query(r -> r.getString(1), "SELECT id FROM Ids").get(0));
+            Assertions.assertEquals(uuid, strings.query(RowMapper.of(Id.class), "SELECT id FROM Ids").get(0).uuid);
+        }
+    }
+
+    enum Rank {
+        MEMBER, ADMIN
+    }
+
+    static final class Player {
+
+        final UUID uuid;
+        final String name;
+        final Instant joined;
+        final Rank rank;
+
+        Player(UUID uuid, String name, Instant joined, Rank rank) {
+            this.uuid = uuid;
+            this.name = name;
+            this.joined = joined;
+            this.rank = rank;
+        }
+
+    }
+
+    static final class Named {
+
+        final String name;
+        final Rank rank;
+
+        Named(String name, Rank rank) {
+            this.name = name;
+            this.rank = rank;
+        }
+
+    }
+
+    static final class Id {
+
+        final UUID uuid;
+
+        Id(UUID uuid) {
+            this.uuid = uuid;
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package dev.flashlabs.flashlibs.database;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+final class ConnectionPoolTest {
+
+    private static java.sql.Connection physical(Connection connection) throws SQLException {
+        return connection.connection.unwrap(java.sql.Connection.class);
+    }
+
+    @Test
+    void testReusesConnections() throws SQLException {
+        try (DatabaseService service = H2.builder().pool(2).build()) {
+            ConnectionPool pool = service.getPool().get();
+            java.sql.Connection first;
+            try (Connection connection = service.getConnection()) {
+                first = physical(connection);
+                Assertions.assertEquals(1, pool.getActive());
+            }
+            try (Connection connection = service.getConnection()) {
+                Assertions.assertSame(first, physical(connection));
+            }
+            Assertions.assertEquals(1, pool.getOpen());
+            Assertions.assertEquals(1, pool.getIdle());
+            Assertions.assertEquals(2, pool.getBorrows());
+        }
+    }
+
+    @Test
+    void testExhaustion() throws SQLException {
+        try (DatabaseService service = H2.builder().pool(1).poolTimeout(Duration.ofMillis(50)).build()) {
+            Connection connection = service.getConnection();
+            Assertions.assertThrows(SQLTransientConnectionException.class, service::getConnection);
+            connection.close();
+            service.getConnection().close();
+            Assertions.assertEquals(1, service.getPool().get().getOpen());
+        }
+    }
+
+    @Test
+    void testReturnedConnectionIsRejected() throws SQLException {
+        try (DatabaseService service = H2.builder().pool(1).build()) {
+            Connection connection = service.getConnection();
+            java.sql.Connection lease = connection.connection;
+            connection.close();
+            Assertions.assertTrue(lease.isClosed());
+            Assertions.assertThrows(SQLException.class, lease::createStatement);
+            lease.close();
+            Assertions.assertEquals(1, service.getPool().get().getIdle());
+        }
+    }
+
+    @Test
+    void testRestoresSessionState() throws SQLException {
+        try (DatabaseService service = H2.builder().pool(1).build()) {
+            service.update("CREATE SCHEMA Other");
+            int isolation;
+            try (Connection connection = service.getConnection()) {
+                isolation = connection.connection.getTransactionIsolation();
+                connection.connection.setTransactionIsolation(java.sql.Connection.TRANSACTION_SERIALIZABLE);
+                connection.connection.setSchema("OTHER");
+            }
+            try (Connection connection = service.getConnection()) {
+                Assertions.assertEquals(isolation, connection.connection.getTransactionIsolation());
+                Assertions.assertEquals("PUBLIC", connection.connection.getSchema());
+            }
+            Assertions.assertEquals(1, service.getPool().get().getOpen());
+        }
+    }
+
+    @Test
+    void testValidatesIdleConnections() throws SQLException {
+        try (DatabaseService service = H2.builder().pool(1).build()) {
+            ConnectionPool pool = service.getPool().get();
+            pool.setValidationInterval(Duration.ZERO);
+            java.sql.Connection first;
+            try (Connection connection = service.getConnection()) {
+                first = physical(connection);
+            }
+            first.close();
+            try (Connection connection = service.getConnection()) {
+                Assertions.assertNotSame(first, physical(connection));
+                connection.update("CREATE TABLE Validated (id INT)");
+            }
+            Assertions.assertEquals(1, pool.getOpen());
+        }
+    }
+
+    @Test
+    void testDetectsLeaks() throws Exception {
+        try (DatabaseService service = H2.builder().pool(1).leakThreshold(Duration.ofMillis(20)).build()) {
+            ConnectionPool pool = service.getPool().get();
+            try (Connection connection = service.getConnection()) {
+                for (int i = 0; i < 50 && pool.getLeaks() == 0; i++) {
+                    Thread.sleep(20);
+                }
+            }
+            Assertions.assertEquals(1, pool.getLeaks());
+        }
+    }
+
+    @Test
+    void testReturnAfterClose() throws SQLException {
+        DatabaseService service = H2.builder().pool(2).build();
+        ConnectionPool pool = service.getPool().get();
+        Connection held = service.getConnection();
+        java.sql.Connection physical = physical(held);
+        service.getConnection().close();
+        Assertions.assertEquals(2, pool.getOpen());
+        service.close();
+        Assertions.assertEquals(1, pool.getOpen());
+        Assertions.assertThrows(SQLException.class, service::getConnection);
+        held.close();
+        Assertions.assertTrue(physical.isClosed());
+        Assertions.assertEquals(0, pool.getOpen());
+        Assertions.assertEquals(0, pool.getActive());
+    }
+
+}
@@ -0,0 +1,163 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class ConnectionTest {
+
+    private static List<Object[]> ids(int... ids) {
+        List<Object[]> args = Lists.newArrayList();
+        for (int id : ids) {
+            args.add(new Object[] {id});
+        }
+        return args;
+    }
+
+    @Test
+    void testStatementReused() throws SQLException {
+        try (DatabaseService service = H2.service()) {
+            try (Connection connection = service.getConnection()) {
+                Statement statement = connection.getCachedStatement("SELECT 1");
+                Assertions.assertSame(statement, connection.getCachedStatement("SELECT 1"));
+                Assertions.assertNotSame(statement, connection.getCachedStatement("SELECT 2"));
+                Assertions.assertEquals(1, connection.getStatementHits());
+                Assertions.assertEquals(2, connection.getStatementMisses());
+            }
+            Assertions.assertEquals(1, service.getStatementHits());
+            Assertions.assertEquals(2, service.getStatementMisses());
+        }
+    }
+
+    @Test
+    void testStatementNotShared() throws SQLException {
+        try (DatabaseService service = H2.service(); Connection connection = service.getConnection()) {
+            Statement statement = connection.getStatement("SELECT 1");
+            Assertions.assertNotSame(statement, connection.getStatement("SELECT 1"));
+            Assertions.assertNotSame(statement, connection.getCachedStatement("SELECT 1"));
+            ResultSet results = statement.query();
+            connection.query(r -> r.getInt(1), "SELECT 1");
+            Assertions.assertFalse(results.isClosed());
+        }
+    }
+
+    @Test
+    void testNestedQueries() throws SQLException {
+        try (DatabaseService service = H2.service(); Connection connection = service.getConnection()) {
+            connection.update("CREATE TABLE Nested (id INT PRIMARY KEY)");
+            connection.batch("INSERT INTO Nested VALUES (?)", ids(1, 2, 3));
+            String sql = "SELECT id FROM Nested WHERE id >= ? ORDER BY id";
+            List<Integer> pairs = Lists.newArrayList();
+            try (ResultSet outer = connection.query(sql, 1)) {
+                while (outer.next()) {
+                    try (Stream<Integer> inner = connection.stream(r -> r.getInt(1), sql, outer.getInt(1))) {
+                        inner.forEach(pairs::add);
+                    }
+                }
+            }
+            Assertions.assertEquals(ImmutableList.of(1, 2, 3, 2, 3, 3), pairs);
+            Statement cached = connection.getCachedStatement(sql);
+            Assertions.assertSame(cached, connection.getCachedStatement(sql));
+        }
+    }
+
+    @Test
+    void testStatementEvicted() throws SQLException {
+        try (DatabaseService service = H2.builder().statements(2).build(); Connection connection = service.getConnection()) {
+            Statement first = connection.getCachedStatement("SELECT 1");
+            Statement second = connection.getCachedStatement("SELECT 2");
+            connection.getCachedStatement("SELECT 1");
+            Statement third = connection.getCachedStatement("SELECT 3");
+            Assertions.assertTrue(second.isClosed());
+            Assertions.assertSame(first, connection.getCachedStatement("SELECT 1"));
+            connection.getCachedStatement("SELECT 2");
+            Assertions.assertTrue(third.isClosed());
+            Assertions.assertFalse(first.isClosed());
+            Assertions.assertEquals(2, connection.getStatementHits());
+            Assertions.assertEquals(4, connection.getStatementMisses());
+        }
+    }
+
+    @Test
+    void testStatementCacheDisabled() throws SQLException {
+        try (DatabaseService service = H2.builder().statements(0).build(); Connection connection = service.getConnection()) {
+            Statement statement = connection.getCachedStatement("SELECT 1");
+            Assertions.assertNotSame(statement, connection.getCachedStatement("SELECT 1"));
+            Assertions.assertTrue(statement.isClosed());
+            Assertions.assertEquals(0, connection.getStatementHits());
+            Assertions.assertEquals(2, connection.getStatementMisses());
+        }
+    }
+
+    @Test
+    void testStatementsClosed() throws SQLException {
+        Statement cached;
+        Statement unshared;
+        try (DatabaseService service = H2.service()) {
+            try (Connection connection = service.getConnection()) {
+                cached = connection.getCachedStatement("SELECT 1");
+                unshared = connection.getStatement("SELECT 1");
+            }
+            Assertions.assertTrue(cached.isClosed());
+            Assertions.assertTrue(unshared.isClosed());
+        }
+    }
+
+    @Test
+    void testBatch() throws SQLException {
+        try (DatabaseService service = H2.builder().batchSize(2).build()) {
+            service.update("CREATE TABLE Batch (id INT PRIMARY KEY)");
+            List<int[]> counts = service.batch("INSERT INTO Batch VALUES (?)", ids(1, 2, 3, 4, 5));
+            Assertions.assertEquals(3, counts.size());
+            Assertions.assertArrayEquals(new int[] {1, 1}, counts.get(0));
+            Assertions.assertArrayEquals(new int[] {1, 1}, counts.get(1));
+            Assertions.assertArrayEquals(new int[] {1}, counts.get(2));
+            Assertions.assertEquals(ImmutableList.of(5L), service.query(r -> r.getLong(1), "SELECT COUNT(*) FROM Batch"));
+        }
+    }
+
+    @Test
+    void testBatchRollsBack() throws SQLException {
+        try (DatabaseService service = H2.builder().batchSize(2).build()) {
+            service.update("CREATE TABLE Batch (id INT PRIMARY KEY)");
+            Assertions.assertThrows(SQLException.class, () -> service.batch("INSERT INTO Batch VALUES (?)", ids(1, 2, 3, 1)));
+            Assertions.assertEquals(ImmutableList.of(0L), service.query(r -> r.getLong(1), "SELECT COUNT(*) FROM Batch"));
+        }
+    }
+
+    @Test
+    void testBatchCleared() throws SQLException {
+        try (DatabaseService service = H2.service(); Connection connection = service.getConnection()) {
+            connection.update("CREATE TABLE Batch (id INT PRIMARY KEY)");
+            List<Object[]> args = ids(1, 2);
+            args.add(new Object[] {});
+            Assertions.assertThrows(SQLException.class, () -> connection.batch("INSERT INTO Batch VALUES (?)", args));
+            List<int[]> counts = connection.batch("INSERT INTO Batch VALUES (?)", ids(3));
+            Assertions.assertArrayEquals(new int[] {1}, counts.get(0));
+            Assertions.assertEquals(ImmutableList.of(3), connection.query(r -> r.getInt(1), "SELECT id FROM Batch"));
+        }
+    }
+
+    @Test
+    void testQueryTimeout() throws SQLException {
+        try (DatabaseService none = H2.service(); DatabaseService rounded = H2.builder().queryTimeout(Duration.ofMillis(1500)).build()) {
+            Assertions.assertEquals(0, none.getQueryTimeout());
+            Assertions.assertEquals(2, rounded.getQueryTimeout());
+        }
+        try (DatabaseService service = H2.builder().queryTimeout(Duration.ofMillis(1)).build(); Connection connection = service.getConnection()) {
+            long start = System.nanoTime();
+            Assertions.assertThrows(SQLTimeoutException.class, () -> connection.query(r -> r.getLong(1),
+                    "SELECT COUNT(*) FROM SYSTEM_RANGE(1, 100000) a, SYSTEM_RANGE(1, 100000) b WHERE a.X + b.X = 0"));
+            Assertions.assertTrue(System.nanoTime() - start < Duration.ofSeconds(30).toNanos());
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class DataLoaderTest {
+
+    private static final String SQL = "SELECT id, name FROM Players WHERE id IN (?)";
+    private static final RowMapper<Player> PLAYER = results -> new Player(results.getInt(1), results.getString(2));
+
+    private DatabaseService service;
+
+    @BeforeAll
+    void setup() throws SQLException {
+        service = H2.service();
+        service.update("CREATE TABLE Players (id INT PRIMARY KEY, name VARCHAR(16))");
+        for (int i = 1; i <= 5; i++) {
+            service.update("INSERT INTO Players VALUES (?, ?)", i, "player" + i);
+        }
+    }
+
+    @AfterAll
+    void close() {
+        service.close();
+    }
+
+    private DataLoader.Builder<Integer, Player> builder() {
+        return DataLoader.builder(SQL, PLAYER, p -> p.id);
+    }
+
+    @Test
+    void testCombinesKeys() throws Exception {
+        DataLoader<Integer, Player> loader = builder().window(Duration.ofMillis(50)).build(service);
+        CompletableFuture<Optional<Player>> first = loader.load(1);
+        CompletableFuture<Optional<Player>> second = loader.load(2);
+        CompletableFuture<Optional<Player>> third = loader.load(3);
+        CompletableFuture<Optional<Player>> missing = loader.load(9);
+        Assertions.assertEquals("player1", first.get(1, TimeUnit.SECONDS).get().name);
+        Assertions.assertEquals("player2", second.get(1, TimeUnit.SECONDS).get().name);
+        Assertions.assertEquals("player3", third.get(1, TimeUnit.SECONDS).get().name);
+        Assertions.assertFalse(missing.get(1, TimeUnit.SECONDS).isPresent());
+        Assertions.assertEquals(4, loader.getRequests());
+        Assertions.assertEquals(1, loader.getBatches());
+    }
+
+    @Test
+    void testDeduplicates() throws Exception {
+        DataLoader<Integer, Player> loader = builder().window(Duration.ofMillis(50)).build(service);
+        CompletableFuture<Optional<Player>> first = loader.load(1);
+        Assertions.assertSame(first, loader.load(1));
+        Assertions.assertEquals("player1", first.get(1, TimeUnit.SECONDS).get().name);
+        Assertions.assertEquals(1, loader.getDeduplicated());
+        Assertions.assertNotSame(first, loader.load(1));
+    }
+
+    @Test
+    void testSizeStartsBatch() throws Exception {
+        DataLoader<Integer, Player> loader = builder().window(Duration.ofHours(1)).size(2).build(service);
+        CompletableFuture<Optional<Player>> first = loader.load(1);
+        CompletableFuture<Optional<Player>> second = loader.load(2);
+        Assertions.assertEquals("player1", first.get(1, TimeUnit.SECONDS).get().name);
+        Assertions.assertEquals("player2", second.get(1, TimeUnit.SECONDS).get().name);
+        Assertions.assertEquals(1, loader.getBatches());
+    }
+
+    @Test
+    void testLoadAll() throws Exception {
+        DataLoader<Integer, Player> loader = builder().window(Duration.ofMillis(100)).size(4).build(service);
+        Map<Integer, Player> players = loader.loadAll(ImmutableList.of(5, 4, 9, 3, 2, 1)).get(1, TimeUnit.SECONDS);
+        Assertions.assertEquals(ImmutableList.of(5, 4, 3, 2, 1), ImmutableList.copyOf(players.keySet()));
+        Assertions.assertEquals("player4", players.get(4).name);
+        Assertions.assertEquals(2, loader.getBatches());
+    }
+
+    @Test
+    void testFailure() {
+        DataLoader<Integer, Player> loader = DataLoader.builder("SELECT id, name FROM Missing WHERE id IN (?)", PLAYER, (Player p) -> p.id).build(service);
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> loader.load(1).get(1, TimeUnit.SECONDS));
+        Assertions.assertTrue(exception.getCause() instanceof SQLException);
+    }
+
+    @Test
+    void testRequiresIn() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DataLoader.builder("SELECT id, name FROM Players WHERE id = ?", PLAYER, (Player p) -> p.id).build(service));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DataLoader.builder(SQL + " OR name IN (?)", PLAYER, (Player p) -> p.id).build(service));
+    }
+
+    private static final class Player {
+
+        private final int id;
+        private final String name;
+
+        private Player(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+    }
+
+}
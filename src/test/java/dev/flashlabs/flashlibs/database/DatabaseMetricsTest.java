@@ -0,0 +1,88 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+final class DatabaseMetricsTest {
+
+    /**
+     * Returns a logger recording the format of each warning to the given list.
+     */
+    private static Logger logger(List<String> warnings) {
+        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] {Logger.class}, (proxy, method, args) -> {
+            if (method.getName().equals("warn")) {
+                warnings.add((String) args[0]);
+            }
+            return method.getReturnType() == boolean.class ? false : null;
+        });
+    }
+
+    @Test
+    void testNormalize() {
+        Assertions.assertEquals("SELECT * FROM Players WHERE id = ?", DatabaseMetrics.normalize("SELECT * FROM Players WHERE id = 42"));
+        Assertions.assertEquals("SELECT * FROM Players WHERE name = ?", DatabaseMetrics.normalize("SELECT * FROM Players WHERE name = 'O''Brien'"));
+        Assertions.assertEquals("SELECT * FROM Players WHERE id IN (?)", DatabaseMetrics.normalize("SELECT *\n  FROM Players\tWHERE id IN (1, 2, ?)"));
+        Assertions.assertEquals("SELECT x1, t.c2 FROM t WHERE v > ?", DatabaseMetrics.normalize("SELECT x1, t.c2 FROM t WHERE v > -1.5"));
+    }
+
+    @Test
+    void testStatements() throws SQLException {
+        try (DatabaseService service = H2.service()) {
+            service.update("CREATE TABLE Players (id INT PRIMARY KEY)");
+            service.update("INSERT INTO Players VALUES (?)", 1);
+            service.update("INSERT INTO Players VALUES (?)", 2);
+            Assertions.assertThrows(SQLException.class, () -> service.update("INSERT INTO Players VALUES (?)", 1));
+            service.query("SELECT id FROM Players WHERE id = 1");
+            service.query("SELECT id FROM Players WHERE id = 2");
+            DatabaseMetrics.StatementMetrics insert = service.getMetrics().getStatements().get("INSERT INTO Players VALUES (?)");
+            Assertions.assertEquals(3, insert.getCalls());
+            Assertions.assertEquals(1, insert.getErrors());
+            Assertions.assertEquals(3, insert.getLatency().getCount());
+            DatabaseMetrics.StatementMetrics select = service.getMetrics().getStatements().get("SELECT id FROM Players WHERE id = ?");
+            Assertions.assertEquals(2, select.getCalls());
+            Assertions.assertEquals(6, service.getMetrics().getAcquisition().getCount());
+            service.getMetrics().reset();
+            Assertions.assertTrue(service.getMetrics().getStatements().isEmpty());
+            Assertions.assertEquals(0, service.getMetrics().getAcquisition().getCount());
+        }
+    }
+
+    @Test
+    void testHistogram() {
+        DatabaseMetrics metrics = new DatabaseMetrics(logger(Lists.newArrayList()), Duration.ZERO);
+        for (int i = 0; i < 90; i++) {
+            metrics.record("SELECT 1", null, 1000, false);
+        }
+        for (int i = 0; i < 10; i++) {
+            metrics.record("SELECT 1", null, 1_000_000, false);
+        }
+        DatabaseMetrics.Histogram latency = metrics.getStatements().get("SELECT ?").getLatency();
+        Assertions.assertEquals(100, latency.getCount());
+        Assertions.assertEquals(Duration.ofNanos(100_900), latency.getMean());
+        Assertions.assertEquals(Duration.ofMillis(1), latency.getMax());
+        Assertions.assertEquals(Duration.ofNanos(2000), latency.getPercentile(50));
+        Assertions.assertEquals(Duration.ofNanos(2000), latency.getPercentile(90));
+        Assertions.assertEquals(Duration.ofMillis(1), latency.getPercentile(99));
+    }
+
+    @Test
+    void testSlowQueries() {
+        List<String> warnings = Lists.newArrayList();
+        DatabaseMetrics metrics = new DatabaseMetrics(logger(warnings), Duration.ofMillis(10));
+        metrics.record("SELECT 1", null, Duration.ofMillis(1).toNanos(), false);
+        Assertions.assertTrue(warnings.isEmpty());
+        metrics.record("SELECT 1", new Object[] {1}, Duration.ofMillis(10).toNanos(), false);
+        Assertions.assertEquals(1, warnings.size());
+        List<String> disabled = Lists.newArrayList();
+        new DatabaseMetrics(logger(disabled), Duration.ZERO).record("SELECT 1", null, Duration.ofHours(1).toNanos(), false);
+        Assertions.assertTrue(disabled.isEmpty());
+    }
+
+}
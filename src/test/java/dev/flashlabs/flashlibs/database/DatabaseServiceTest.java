@@ -0,0 +1,281 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class DatabaseServiceTest {
+
+    private static final RowMapper<String> NAME = results -> results.getString(1);
+
+    private DatabaseService service;
+
+    /**
+     * Returns a service with a single pooled connection and a table of the
+     * given number of rows, so that streams holding the connection cause
+     * other statements to time out.
+     */
+    private static DatabaseService rows(int count) throws SQLException {
+        DatabaseService service = H2.builder().pool(1).poolTimeout(Duration.ofMillis(100)).build();
+        service.update("CREATE TABLE Rows (id INT PRIMARY KEY)");
+        for (int i = 0; i < count; i++) {
+            service.update("INSERT INTO Rows VALUES (?)", i);
+        }
+        return service;
+    }
+
+    private static DataSource source(String name) throws SQLException {
+        DataSource source = H2.source(name);
+        try (Connection connection = DatabaseService.of(source).getConnection()) {
+            connection.update("CREATE TABLE Source (name VARCHAR(16))");
+            connection.update("INSERT INTO Source VALUES (?)", name);
+        }
+        return source;
+    }
+
+    @BeforeAll
+    void setup() throws SQLException {
+        service = DatabaseService.builder(source("primary"))
+                .replicas(source("replica"))
+                .routing(DatabaseService.Routing.LEAST_BUSY)
+                .build();
+    }
+
+    @AfterAll
+    void close() {
+        service.close();
+    }
+
+    @Test
+    void testQueryUsesReplica() throws SQLException {
+        Assertions.assertEquals("replica", service.query(NAME, "SELECT name FROM Source").get(0));
+    }
+
+    @Test
+    void testCacheUsesPrimary() throws SQLException {
+        try (DatabaseService cached = DatabaseService.builder(source("cachedPrimary"))
+                .replicas(source("cachedReplica"))
+                .cache(100, Duration.ofHours(1))
+                .build()) {
+            Assertions.assertEquals("cachedPrimary", cached.query(NAME, "SELECT name FROM Source").get(0));
+            Assertions.assertEquals("cachedPrimary", cached.table("SELECT name FROM Source").getString(0, 1));
+        }
+    }
+
+    @Test
+    void testPinUsesPrimary() throws SQLException {
+        try (DatabaseService.Pin pin = service.pin()) {
+            Assertions.assertEquals("primary", service.query(NAME, "SELECT name FROM Source").get(0));
+        }
+        Assertions.assertEquals("replica", service.query(NAME, "SELECT name FROM Source").get(0));
+    }
+
+    @Test
+    void testTransactionUsesPrimary() throws SQLException {
+        Assertions.assertEquals("primary", service.inTransaction(t -> service.query(NAME, "SELECT name FROM Source").get(0)));
+    }
+
+    @Test
+    void testUpdateUsesPrimary() throws SQLException {
+        service.update("CREATE TABLE Writes (name VARCHAR(16))");
+        service.update("INSERT INTO Writes VALUES (?)", "written");
+        try (DatabaseService.Pin pin = service.pin()) {
+            Assertions.assertEquals("written", service.query(NAME, "SELECT name FROM Writes").get(0));
+        }
+        Assertions.assertThrows(SQLException.class, () -> service.query(NAME, "SELECT name FROM Writes"));
+    }
+
+    @Test
+    void testScopeReusesConnection() throws Exception {
+        try (DatabaseService.Scope scope = service.scope()) {
+            Connection connection = service.getConnection();
+            try (DatabaseService.Scope nested = service.scope()) {
+                Assertions.assertSame(connection, service.getReadConnection());
+            }
+            Assertions.assertSame(connection, service.getConnection());
+            Assertions.assertEquals("primary", service.query(NAME, "SELECT name FROM Source").get(0));
+        }
+        Assertions.assertEquals("primary", service.scopeAsync(c -> service.query(NAME, "SELECT name FROM Source").get(0)).get());
+        Assertions.assertEquals("replica", service.query(NAME, "SELECT name FROM Source").get(0));
+    }
+
+    @Test
+    void testStream() throws SQLException {
+        try (DatabaseService service = rows(1000)) {
+            try (Stream<ResultSet> stream = service.stream("SELECT id FROM Rows ORDER BY id")) {
+                Assertions.assertEquals(1000, stream.mapToInt(r -> 1).sum());
+            }
+            try (Stream<Integer> stream = service.stream(r -> r.getInt(1), "SELECT id FROM Rows WHERE id < ? ORDER BY id", 3)) {
+                Assertions.assertEquals(ImmutableList.of(0, 1, 2), stream.collect(Collectors.toList()));
+            }
+            Assertions.assertEquals(0, service.getPool().get().getActive());
+        }
+    }
+
+    @Test
+    void testStreamHoldsConnection() throws SQLException {
+        try (DatabaseService service = rows(10)) {
+            try (Stream<Integer> stream = service.stream(r -> r.getInt(1), "SELECT id FROM Rows ORDER BY id")) {
+                Iterator<Integer> iterator = stream.iterator();
+                Assertions.assertEquals(0, iterator.next().intValue());
+                Assertions.assertEquals(1, service.getPool().get().getActive());
+                Assertions.assertThrows(SQLException.class, () -> service.query("SELECT 1"));
+                Assertions.assertEquals(1, iterator.next().intValue());
+            }
+            Assertions.assertEquals(0, service.getPool().get().getActive());
+            Assertions.assertEquals(10, service.query(r -> r.getInt(1), "SELECT id FROM Rows").size());
+        }
+    }
+
+    @Test
+    void testStreamReleasesWhenConsumed() throws SQLException {
+        try (DatabaseService service = rows(10)) {
+            List<Integer> ids = service.stream(r -> r.getInt(1), "SELECT id FROM Rows ORDER BY id").collect(Collectors.toList());
+            Assertions.assertEquals(10, ids.size());
+            Assertions.assertEquals(0, service.getPool().get().getActive());
+        }
+    }
+
+    @Test
+    void testStreamReleasesOnError() throws SQLException {
+        try (DatabaseService service = rows(0)) {
+            Assertions.assertThrows(SQLException.class, () -> service.stream("SELECT id FROM Missing"));
+            Assertions.assertEquals(0, service.getPool().get().getActive());
+            try (Stream<Integer> stream = service.stream(r -> {
+                throw new SQLException("Mapping failed.");
+            }, "SELECT 1")) {
+                Assertions.assertThrows(UncheckedSQLException.class, () -> stream.collect(Collectors.toList()));
+            }
+            Assertions.assertEquals(0, service.getPool().get().getActive());
+        }
+    }
+
+    @Test
+    void testAsync() throws Exception {
+        try (DatabaseService service = H2.service()) {
+            service.updateAsync("CREATE TABLE Async (id INT PRIMARY KEY)").get(1, TimeUnit.SECONDS);
+            service.transactionAsync(t -> {
+                t.update("INSERT INTO Async VALUES (?)", 1);
+                t.update("INSERT INTO Async VALUES (?)", 2);
+                return null;
+            }).get(1, TimeUnit.SECONDS);
+            Assertions.assertEquals(ImmutableList.of(1, 2), service.queryAsync(r -> r.getInt(1), "SELECT id FROM Async ORDER BY id").get(1, TimeUnit.SECONDS));
+            Assertions.assertEquals(2, service.tableAsync("SELECT id FROM Async").get(1, TimeUnit.SECONDS).getRowCount());
+            Assertions.assertTrue(service.queryAsync("SELECT id FROM Async WHERE id = ?", 2).get(1, TimeUnit.SECONDS).next());
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class,
+                    () -> service.updateAsync("INSERT INTO Async VALUES (?)", 1).get(1, TimeUnit.SECONDS));
+            Assertions.assertTrue(exception.getCause() instanceof SQLException);
+        }
+    }
+
+    @Test
+    void testAsyncQueueFull() throws Exception {
+        try (DatabaseService service = H2.builder().threads(1).capacity(1).timeout(Duration.ofMillis(50)).build()) {
+            CountDownLatch latch = new CountDownLatch(1);
+            CompletableFuture<Void> blocked = service.scopeAsync(c -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+            CompletableFuture<List<Integer>> queued = service.queryAsync(r -> r.getInt(1), "SELECT 1");
+            Assertions.assertThrows(RejectedExecutionException.class, () -> service.updateAsync("SELECT 1"));
+            latch.countDown();
+            blocked.get(1, TimeUnit.SECONDS);
+            Assertions.assertEquals(ImmutableList.of(1), queued.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testAsyncQueueFullNeverBlocks() throws Exception {
+        try (DatabaseService service = H2.builder().threads(1).capacity(1).timeout(Duration.ofSeconds(30)).build()) {
+            service.update("CREATE TABLE Stats (id INT PRIMARY KEY, value INT)");
+            WriteBuffer<Integer> buffer = WriteBuffer.builder("MERGE INTO Stats KEY (id) VALUES (?, ?)")
+                    .interval(Duration.ofHours(1))
+                    .threshold(1)
+                    .build(service);
+            CountDownLatch latch = new CountDownLatch(1);
+            CompletableFuture<Void> blocked = service.scopeAsync(c -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+            CompletableFuture<List<Integer>> queued = service.queryAsync(r -> r.getInt(1), "SELECT 1");
+            long start = System.nanoTime();
+            buffer.put(1, 1, 10);
+            service.setMainThread(() -> true);
+            Assertions.assertThrows(RejectedExecutionException.class, () -> service.updateAsync("SELECT 1"));
+            service.setMainThread(() -> false);
+            Assertions.assertTrue(System.nanoTime() - start < Duration.ofSeconds(10).toNanos());
+            latch.countDown();
+            blocked.get(1, TimeUnit.SECONDS);
+            Assertions.assertEquals(ImmutableList.of(1), queued.get(1, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, buffer.getPending());
+            buffer.close();
+            Assertions.assertEquals(ImmutableList.of(10), service.query(r -> r.getInt(1), "SELECT value FROM Stats"));
+        }
+    }
+
+    @Test
+    void testAsyncAfterClose() {
+        DatabaseService service = H2.service();
+        service.close();
+        Assertions.assertThrows(RejectedExecutionException.class, () -> service.updateAsync("SELECT 1"));
+    }
+
+    @Test
+    void testGuard() throws SQLException {
+        try (DatabaseService service = H2.builder().guard(DatabaseService.Guard.THROW).build()) {
+            service.update("CREATE TABLE Guarded (id INT)");
+            service.setMainThread(() -> true);
+            Assertions.assertThrows(IllegalStateException.class, () -> service.update("INSERT INTO Guarded VALUES (1)"));
+            service.setMainThread(() -> false);
+            service.update("INSERT INTO Guarded VALUES (1)");
+        }
+    }
+
+    @Test
+    void testGuardAllowsCloseOnMainThread() throws SQLException {
+        DatabaseService service = H2.builder().guard(DatabaseService.Guard.THROW).build();
+        service.update("CREATE TABLE Buffered (id INT PRIMARY KEY, value INT)");
+        WriteBuffer<Integer> buffer = WriteBuffer.builder("MERGE INTO Buffered KEY (id) VALUES (?, ?)")
+                .interval(Duration.ofHours(1))
+                .build(service);
+        EventLog log = EventLog.builder().table("GuardedEvents").interval(Duration.ofHours(1)).build(service);
+        service.setMainThread(() -> true);
+        buffer.put(1, 1, 10);
+        log.append("first", "pay", "10");
+        service.close();
+        Assertions.assertEquals(0, buffer.getPending());
+        Assertions.assertEquals(0, log.getPending());
+        Assertions.assertThrows(IllegalStateException.class, () -> service.query("SELECT id FROM Buffered"));
+        try (DatabaseService reopened = DatabaseService.of(service.getSource())) {
+            Assertions.assertEquals(ImmutableList.of(10), reopened.query(r -> r.getInt(1), "SELECT value FROM Buffered"));
+            Assertions.assertEquals(ImmutableList.of(1L), reopened.query(r -> r.getLong(1), "SELECT COUNT(*) FROM GuardedEvents"));
+        }
+    }
+
+}
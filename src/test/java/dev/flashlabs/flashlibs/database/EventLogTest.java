@@ -0,0 +1,136 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.base.Strings;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class EventLogTest {
+
+    private DatabaseService service;
+
+    @BeforeAll
+    void setup() {
+        service = H2.service();
+    }
+
+    @AfterAll
+    void close() {
+        service.close();
+    }
+
+    @Test
+    void testAppendAndQuery() throws SQLException {
+        EventLog log = EventLog.builder().table("Events").interval(Duration.ofHours(1)).build(service);
+        Instant start = Instant.now();
+        log.append("first", "pay", "10");
+        log.append("second", "pay", "20");
+        log.append("first", "ban", null);
+        Assertions.assertEquals(3, log.getPending());
+        log.flush();
+        Assertions.assertEquals(0, log.getPending());
+        Instant end = Instant.now().plusMillis(1);
+        try (Stream<EventLog.Event> events = log.query("first", start, end)) {
+            List<String> types = events.map(EventLog.Event::getType).collect(Collectors.toList());
+            Assertions.assertEquals(2, types.size());
+            Assertions.assertEquals("pay", types.get(0));
+            Assertions.assertEquals("ban", types.get(1));
+        }
+        try (Stream<EventLog.Event> events = log.query(start, end)) {
+            Assertions.assertEquals(3, events.count());
+        }
+        log.close();
+    }
+
+    @Test
+    void testCompaction() throws Exception {
+        AtomicLong summarized = new AtomicLong();
+        EventLog log = EventLog.builder()
+                .table("Compacted")
+                .interval(Duration.ofHours(1))
+                .retention(Duration.ofMillis(1))
+                .partition(Duration.ofMillis(1))
+                .summarizer((transaction, events) -> summarized.addAndGet(events.count()))
+                .build(service);
+        log.append("first", "pay", "10");
+        log.append("second", "pay", "20");
+        log.flush();
+        Thread.sleep(10);
+        log.compact();
+        Assertions.assertEquals(2, summarized.get());
+        try (Stream<EventLog.Event> events = log.query(Instant.EPOCH, Instant.now())) {
+            Assertions.assertEquals(0, events.count());
+        }
+        log.close();
+    }
+
+    @Test
+    void testRejected() throws SQLException {
+        String longest = Strings.repeat("x", 64);
+        service.update("CREATE TABLE Rejected (id BIGINT AUTO_INCREMENT PRIMARY KEY, event_time BIGINT NOT NULL, "
+                + "entity VARCHAR(64) NOT NULL, event_type VARCHAR(64) NOT NULL, data VARCHAR(4))");
+        EventLog log = EventLog.builder().table("Rejected").interval(Duration.ofHours(1)).build(service);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.append(longest + "x", "pay", null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.append("first", longest + "x", null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.append("first", "pay", Strings.repeat("x", 1025)));
+        Assertions.assertEquals(0, log.getAppended());
+        log.append(longest, longest, "10");
+        log.append("first", "pay", "too long");
+        log.append("first", "pay", "30");
+        log.flush();
+        Assertions.assertEquals(0, log.getPending());
+        Assertions.assertEquals(2, log.getWritten());
+        Assertions.assertEquals(1, log.getRejected());
+        try (Stream<EventLog.Event> events = log.query(Instant.EPOCH, Instant.now().plusMillis(1))) {
+            Assertions.assertEquals(2, events.count());
+        }
+        log.close();
+    }
+
+    @Test
+    void testOutage() throws Exception {
+        AtomicBoolean down = new AtomicBoolean(false);
+        AtomicInteger failures = new AtomicInteger();
+        try (DatabaseService unreliable = DatabaseService.of(H2.unreliable(down, failures))) {
+            EventLog log = EventLog.builder()
+                    .interval(Duration.ofHours(1))
+                    .threshold(2)
+                    .capacity(5)
+                    .build(unreliable);
+            down.set(true);
+            log.append("first", "pay", "10");
+            Assertions.assertThrows(SQLException.class, log::flush);
+            Assertions.assertEquals(1, failures.get());
+            for (int i = 0; i < 4; i++) {
+                Assertions.assertTrue(log.append("first", "pay", String.valueOf(i)));
+            }
+            Assertions.assertFalse(log.append("first", "pay", "dropped"));
+            Thread.sleep(100);
+            Assertions.assertEquals(1, failures.get());
+            Assertions.assertEquals(5, log.getPending());
+            Assertions.assertEquals(1, log.getDropped());
+            down.set(false);
+            log.flush();
+            Assertions.assertEquals(0, log.getPending());
+            Assertions.assertEquals(5, log.getWritten());
+            try (Stream<EventLog.Event> events = log.query(Instant.EPOCH, Instant.now().plusMillis(1))) {
+                Assertions.assertEquals(5, events.count());
+            }
+            log.close();
+        }
+    }
+
+}
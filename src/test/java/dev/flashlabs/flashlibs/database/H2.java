@@ -0,0 +1,72 @@
+package dev.flashlabs.flashlibs.database;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+/**
+ * Creates in-memory H2 databases for tests. Databases are kept open until the
+ * JVM exits so that they can be shared by multiple services.
+ */
+final class H2 {
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private H2() {}
+
+    /**
+     * Returns a data source for the in-memory database with the given name.
+     */
+    static JdbcDataSource source(String name) {
+        JdbcDataSource source = new JdbcDataSource();
+        source.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        return source;
+    }
+
+    /**
+     * Returns a data source for a new in-memory database that is not shared
+     * with any other test.
+     */
+    static JdbcDataSource source() {
+        return source("test" + COUNTER.incrementAndGet());
+    }
+
+    /**
+     * Returns a service builder for a new in-memory database.
+     */
+    static DatabaseService.Builder builder() {
+        return DatabaseService.builder(source());
+    }
+
+    /**
+     * Returns a service for a new in-memory database.
+     */
+    static DatabaseService service() {
+        return builder().build();
+    }
+
+    /**
+     * Returns a data source for a new in-memory database that fails to open
+     * connections while the given flag is set, counting each failure.
+     */
+    static DataSource unreliable(AtomicBoolean down, AtomicInteger failures) {
+        DataSource source = source();
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getConnection") && down.get()) {
+                failures.incrementAndGet();
+                throw new SQLException("Database is unavailable.");
+            }
+            try {
+                return method.invoke(source, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,111 @@
+package dev.flashlabs.flashlibs.database;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class PlayerDataStoreTest {
+
+    private static final RowMapper<Integer> COINS = results -> results.getInt(1);
+
+    private DatabaseService service;
+    private PlayerDataStore<Integer> store;
+
+    @BeforeAll
+    void setup() throws SQLException {
+        service = H2.service();
+        service.update("CREATE TABLE Players (uuid VARCHAR(36) PRIMARY KEY, coins INT)");
+        store = PlayerDataStore.builder("SELECT coins FROM Players WHERE uuid = ?", COINS)
+                .defaults(uuid -> 0)
+                .save("MERGE INTO Players KEY (uuid) VALUES (?, ?)", (uuid, coins) -> new Object[] {uuid, coins})
+                .interval(Duration.ofHours(1))
+                .build(service);
+    }
+
+    @AfterAll
+    void close() {
+        service.close();
+    }
+
+    @Test
+    void testLoadDefaults() {
+        UUID uuid = UUID.randomUUID();
+        Assertions.assertEquals(0, store.load(uuid).join().orElse(-1));
+        Assertions.assertEquals(0, store.get(uuid).orElse(-1));
+    }
+
+    @Test
+    void testUpdateSavesAndEvicts() throws SQLException {
+        UUID uuid = UUID.randomUUID();
+        store.load(uuid).join();
+        Assertions.assertEquals(5, store.update(uuid, coins -> coins + 5).orElse(-1));
+        Assertions.assertEquals(1, store.getDirty());
+        store.flush();
+        Assertions.assertEquals(0, store.getDirty());
+        Assertions.assertFalse(store.get(uuid).isPresent());
+        Assertions.assertFalse(store.update(uuid, coins -> coins + 5).isPresent());
+        Assertions.assertEquals(5, service.query(COINS, "SELECT coins FROM Players WHERE uuid = ?", uuid).get(0));
+    }
+
+    @Test
+    void testSkipsRejected() throws SQLException {
+        service.update("CREATE TABLE Checked (uuid VARCHAR(36) PRIMARY KEY, coins INT CHECK (coins >= 0))");
+        PlayerDataStore<Integer> checked = PlayerDataStore.builder("SELECT coins FROM Checked WHERE uuid = ?", COINS)
+                .defaults(uuid -> 0)
+                .save("MERGE INTO Checked KEY (uuid) VALUES (?, ?)", (uuid, coins) -> new Object[] {uuid, coins})
+                .interval(Duration.ofHours(1))
+                .build(service);
+        UUID valid = UUID.randomUUID();
+        UUID invalid = UUID.randomUUID();
+        checked.set(valid, 5);
+        checked.set(invalid, -5);
+        checked.load(valid).join();
+        checked.load(invalid).join();
+        checked.flush();
+        Assertions.assertEquals(0, checked.getDirty());
+        Assertions.assertEquals(5, service.query(COINS, "SELECT coins FROM Checked WHERE uuid = ?", valid).get(0));
+        Assertions.assertTrue(service.query(COINS, "SELECT coins FROM Checked WHERE uuid = ?", invalid).isEmpty());
+        checked.close();
+    }
+
+    @Test
+    void testSetRacingSave() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread saver = new Thread(() -> {
+            while (running.get()) {
+                try {
+                    store.flush();
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        });
+        saver.start();
+        try {
+            for (int i = 1; i <= 500; i++) {
+                store.set(uuid, i);
+                store.load(uuid).join();
+                store.flush();
+                List<Integer> coins = service.query(COINS, "SELECT coins FROM Players WHERE uuid = ?", uuid);
+                Assertions.assertEquals(i, coins.get(0));
+            }
+        } finally {
+            running.set(false);
+            saver.join();
+        }
+        Assertions.assertNull(error.get());
+    }
+
+}
@@ -0,0 +1,99 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class QueryCacheTest {
+
+    private static final RowMapper<String> NAME = results -> results.getString(1);
+
+    private DatabaseService service;
+    private QueryCache cache;
+
+    @BeforeAll
+    void setup() throws SQLException {
+        service = H2.builder().cache(100, Duration.ofHours(1)).build();
+        service.update("CREATE TABLE Players (name VARCHAR(16))");
+        service.update("CREATE TABLE Stats (name VARCHAR(16))");
+        service.update("INSERT INTO Players VALUES (?)", "first");
+        cache = service.getQueryCache().get();
+    }
+
+    @AfterAll
+    void close() {
+        service.close();
+    }
+
+    private static void assertReads(String sql, String... tables) {
+        Assertions.assertEquals(Optional.of(ImmutableSet.copyOf(tables)), QueryCache.parseReads(sql), sql);
+    }
+
+    private static void assertWrites(String sql, String... tables) {
+        Optional<ImmutableSet<String>> expected = tables.length > 0 ? Optional.of(ImmutableSet.copyOf(tables)) : Optional.empty();
+        Assertions.assertEquals(expected, QueryCache.parseWrites(sql), sql);
+    }
+
+    @Test
+    void testParseReads() {
+        assertReads("SELECT * FROM Players", "players");
+        assertReads("SELECT * FROM Players p JOIN Stats AS s ON p.name = s.name", "players", "stats");
+        assertReads("SELECT * FROM Players p LEFT JOIN Stats s USING (name) WHERE p.name = ?", "players", "stats");
+        assertReads("SELECT * FROM \"Players\"", "players");
+        assertReads("SELECT * FROM `Players`", "players");
+        assertReads("SELECT * FROM [Players]", "players");
+        assertReads("SELECT * FROM main.Players", "players");
+        assertReads("SELECT * FROM \"main\".\"Players\"", "players");
+        assertReads("SELECT * FROM Players p, Stats s WHERE p.name = s.name", "players", "stats");
+        assertReads("SELECT * FROM Players, Stats", "players", "stats");
+        assertReads("SELECT * FROM (SELECT name FROM Players) sub", "players");
+        assertReads("WITH top AS (SELECT * FROM Players) SELECT * FROM top", "players", "top");
+        Assertions.assertFalse(QueryCache.parseReads("SELECT 1").isPresent());
+    }
+
+    @Test
+    void testParseWrites() {
+        assertWrites("INSERT INTO Players VALUES (?)", "players");
+        assertWrites("INSERT OR REPLACE INTO Players VALUES (?)", "players");
+        assertWrites("INSERT IGNORE INTO `Players` VALUES (?)", "players");
+        assertWrites("INSERT INTO Archive SELECT * FROM Players", "archive");
+        assertWrites("MERGE INTO main.Players KEY (name) VALUES (?)", "players");
+        assertWrites("UPDATE \"Players\" SET name = ?", "players");
+        assertWrites("DELETE FROM Players WHERE name = ?", "players");
+        assertWrites("TRUNCATE TABLE Players", "players");
+        assertWrites("UPDATE Players p JOIN Stats s ON p.name = s.name SET p.name = ?");
+        assertWrites("CREATE TABLE Archive (name VARCHAR(16))");
+        assertWrites("ALTER TABLE Players ADD COLUMN kills INT");
+        assertWrites("DROP TABLE Archive");
+    }
+
+    @Test
+    void testInvalidation() throws SQLException {
+        String select = "SELECT name FROM Players ORDER BY name";
+        Assertions.assertEquals(1, service.query(NAME, select).size());
+        long hits = cache.getHits();
+        long invalidations = cache.getInvalidations();
+        Assertions.assertEquals(1, service.query(NAME, select).size());
+        Assertions.assertEquals(hits + 1, cache.getHits());
+        service.update("INSERT INTO Stats VALUES (?)", "unrelated");
+        Assertions.assertEquals(1, service.query(NAME, select).size());
+        Assertions.assertEquals(hits + 2, cache.getHits());
+        service.update("INSERT INTO Players VALUES (?)", "second");
+        service.update("INSERT INTO Players VALUES (?)", "third");
+        Assertions.assertEquals(invalidations, cache.getInvalidations());
+        Assertions.assertEquals(3, service.query(NAME, select).size());
+        Assertions.assertEquals(invalidations + 1, cache.getInvalidations());
+        service.update("CREATE TABLE Archive (name VARCHAR(16))");
+        Assertions.assertEquals(3, service.query(NAME, select).size());
+        Assertions.assertEquals(invalidations + 2, cache.getInvalidations());
+    }
+
+}
@@ -0,0 +1,71 @@
+package dev.flashlabs.flashlibs.database;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class ResultTableTest {
+
+    private DatabaseService service;
+
+    @BeforeAll
+    void setup() throws SQLException {
+        service = H2.service();
+        service.update("CREATE TABLE Players (id INT, kills BIGINT, ratio DOUBLE, name VARCHAR(16))");
+        service.update("INSERT INTO Players VALUES (?, ?, ?, ?)", 1, 5_000_000_000L, 0.5, "first");
+        service.update("INSERT INTO Players VALUES (?, ?, ?, ?)", 2, null, null, "first");
+        service.update("CREATE TABLE Objects (data VARBINARY(4), blob BLOB, clob CLOB, time TIMESTAMP, list ARRAY)");
+        service.update("INSERT INTO Objects VALUES (?, ?, ?, ?, ?)",
+                new byte[] {1, 2}, new byte[] {3, 4}, "text", new Timestamp(1000), new Object[] {"a", "b"});
+    }
+
+    @AfterAll
+    void close() {
+        service.close();
+    }
+
+    @Test
+    void testColumns() throws SQLException {
+        ResultTable table = service.table("SELECT * FROM Players ORDER BY id");
+        Assertions.assertEquals(2, table.getRowCount());
+        Assertions.assertEquals(4, table.getColumnCount());
+        Assertions.assertEquals(2, table.findColumn("KILLS"));
+        Assertions.assertEquals(5_000_000_000L, table.getLong(0, 2));
+        Assertions.assertEquals(0.5, table.getDouble(0, 3));
+        Assertions.assertTrue(table.isNull(1, 2));
+        Assertions.assertEquals(0, table.getLong(1, 2));
+        Assertions.assertNull(table.getObject(1, 3));
+        Assertions.assertSame(table.getString(0, 4), table.getString(1, 4));
+        ResultTable.Cursor cursor = table.cursor();
+        int rows = 0;
+        while (cursor.next()) {
+            Assertions.assertEquals(++rows, cursor.getInt(1));
+        }
+        Assertions.assertEquals(2, rows);
+    }
+
+    @Test
+    void testObjectsAreDetached() throws SQLException {
+        ResultTable table = service.table("SELECT * FROM Objects");
+        byte[] data = (byte[]) table.getObject(0, 1);
+        Assertions.assertArrayEquals(new byte[] {1, 2}, data);
+        data[0] = 9;
+        Assertions.assertArrayEquals(new byte[] {1, 2}, (byte[]) table.getObject(0, 1));
+        Assertions.assertArrayEquals(new byte[] {3, 4}, (byte[]) table.getObject(0, 2));
+        Assertions.assertEquals("text", table.getString(0, 3));
+        Timestamp time = (Timestamp) table.getObject(0, 4);
+        time.setTime(0);
+        Assertions.assertEquals(new Timestamp(1000), table.getObject(0, 4));
+        Object[] list = (Object[]) table.getObject(0, 5);
+        Assertions.assertArrayEquals(new Object[] {"a", "b"}, list);
+        list[0] = "c";
+        Assertions.assertArrayEquals(new Object[] {"a", "b"}, (Object[]) table.getObject(0, 5));
+    }
+
+}
@@ -0,0 +1,129 @@
+package dev.flashlabs.flashlibs.database;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class RowMapperTest {
+
+    private DatabaseService service;
+
+    @BeforeAll
+    void setup() throws SQLException {
+        service = H2.service();
+        service.update("CREATE TABLE Stats (name VARCHAR(16), kills INT, playtime BIGINT, ratio DOUBLE, banned BOOLEAN, rank INT)");
+        service.update("INSERT INTO Stats VALUES (?, ?, ?, ?, ?, ?)", "first", 10, 3600000L, 2.5, false, 3);
+        service.update("INSERT INTO Stats VALUES (?, ?, ?, ?, ?, ?)", "second", 0, 0L, 0.0, true, null);
+    }
+
+    @AfterAll
+    void close() {
+        service.close();
+    }
+
+    @Test
+    void testConstructor() throws SQLException {
+        List<Stats> stats = service.query(RowMapper.of(Stats.class), "SELECT * FROM Stats ORDER BY name");
+        Assertions.assertEquals(2, stats.size());
+        Assertions.assertEquals("first", stats.get(0).name);
+        Assertions.assertEquals(10, stats.get(0).kills);
+        Assertions.assertEquals(3600000L, stats.get(0).playtime);
+        Assertions.assertEquals(2.5, stats.get(0).ratio);
+        Assertions.assertFalse(stats.get(0).banned);
+        Assertions.assertEquals(Integer.valueOf(3), stats.get(0).rank);
+        Assertions.assertTrue(stats.get(1).banned);
+        Assertions.assertNull(stats.get(1).rank);
+    }
+
+    @Test
+    void testNamedColumns() throws SQLException {
+        RowMapper<Kills> mapper = RowMapper.of(Kills.class, "NAME", "kills");
+        List<Kills> kills = service.query(mapper, "SELECT kills, playtime, name FROM Stats WHERE name = ?", "first");
+        Assertions.assertEquals("first", kills.get(0).name);
+        Assertions.assertEquals(10, kills.get(0).kills);
+        Assertions.assertThrows(SQLException.class, () -> service.query(mapper, "SELECT kills FROM Stats"));
+    }
+
+    @Test
+    void testNoMatchingConstructor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.query(RowMapper.of(Kills.class), "SELECT name FROM Stats"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.query(RowMapper.of(Ambiguous.class), "SELECT name FROM Stats"));
+    }
+
+    @Test
+    void testBoundOncePerQuery() throws SQLException {
+        AtomicInteger binds = new AtomicInteger();
+        AtomicInteger maps = new AtomicInteger();
+        RowMapper<String> mapper = new RowMapper<String>() {
+
+            @Override
+            public String map(ResultSet results) {
+                throw new AssertionError("Unbound mapper was used.");
+            }
+
+            @Override
+            public RowMapper<String> bind(ResultSetMetaData metadata, CodecRegistry codecs) throws SQLException {
+                binds.incrementAndGet();
+                int index = metadata.getColumnCount();
+                return results -> {
+                    maps.incrementAndGet();
+                    return results.getString(index);
+                };
+            }
+
+        };
+        Assertions.assertEquals("second", service.query(mapper, "SELECT kills, name FROM Stats ORDER BY name").get(1));
+        Assertions.assertEquals(1, binds.get());
+        Assertions.assertEquals(2, maps.get());
+    }
+
+    private static final class Stats {
+
+        private final String name;
+        private final int kills;
+        private final long playtime;
+        private final double ratio;
+        private final boolean banned;
+        private final Integer rank;
+
+        private Stats(String name, int kills, long playtime, double ratio, boolean banned, Integer rank) {
+            this.name = name;
+            this.kills = kills;
+            this.playtime = playtime;
+            this.ratio = ratio;
+            this.banned = banned;
+            this.rank = rank;
+        }
+
+    }
+
+    private static final class Kills {
+
+        private final String name;
+        private final int kills;
+
+        private Kills(String name, int kills) {
+            this.name = name;
+            this.kills = kills;
+        }
+
+    }
+
+    private static final class Ambiguous {
+
+        private Ambiguous(String name) {}
+
+        private Ambiguous(Integer id) {}
+
+    }
+
+}
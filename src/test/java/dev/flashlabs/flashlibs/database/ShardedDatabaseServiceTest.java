@@ -0,0 +1,70 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class ShardedDatabaseServiceTest {
+
+    private static final RowMapper<String> ID = results -> results.getString(1);
+
+    private final List<String> ids = Lists.newArrayList();
+    private ShardedDatabaseService sharded;
+
+    @BeforeAll
+    void setup() throws Exception {
+        ShardedDatabaseService.Builder builder = ShardedDatabaseService.builder();
+        for (int i = 0; i < 3; i++) {
+            builder.shard("shard" + i, H2.service());
+        }
+        sharded = builder.build();
+        sharded.updateAll("CREATE TABLE Players (id VARCHAR(36) PRIMARY KEY)").get();
+        for (int i = 0; i < 300; i++) {
+            String id = UUID.randomUUID().toString();
+            sharded.update(id, "INSERT INTO Players VALUES (?)", id);
+            ids.add(id);
+        }
+    }
+
+    @AfterAll
+    void close() {
+        sharded.close();
+    }
+
+    @Test
+    void testRouting() throws SQLException {
+        for (String id : ids) {
+            Assertions.assertEquals(Lists.newArrayList(id), sharded.query(id, ID, "SELECT id FROM Players WHERE id = ?", id));
+        }
+        for (DatabaseService shard : sharded.getShards().values()) {
+            Assertions.assertFalse(shard.query(ID, "SELECT id FROM Players").isEmpty());
+        }
+    }
+
+    @Test
+    void testQueryAll() throws Exception {
+        Set<String> all = Sets.newHashSet(sharded.queryAll(ID, "SELECT id FROM Players").get());
+        Assertions.assertEquals(Sets.newHashSet(ids), all);
+    }
+
+    @Test
+    void testStableAssignment() {
+        ShardedDatabaseService.Builder builder = ShardedDatabaseService.builder();
+        sharded.getShards().forEach(builder::shard);
+        ShardedDatabaseService copy = builder.build();
+        for (String id : ids) {
+            Assertions.assertSame(sharded.getShard(id), copy.getShard(id));
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class TransactionTest {
+
+    private static final RowMapper<Integer> ID = results -> results.getInt(1);
+
+    private static DatabaseService service() throws SQLException {
+        DatabaseService service = H2.builder().retries(3, Duration.ofMillis(1)).build();
+        service.update("CREATE TABLE Ids (id INT PRIMARY KEY)");
+        return service;
+    }
+
+    private static List<Integer> ids(DatabaseService service) throws SQLException {
+        return service.query(ID, "SELECT id FROM Ids ORDER BY id");
+    }
+
+    @Test
+    void testCommit() throws SQLException {
+        try (DatabaseService service = service()) {
+            Assertions.assertEquals("done", service.inTransaction(t -> {
+                t.update("INSERT INTO Ids VALUES (?)", 1);
+                return "done";
+            }));
+            Assertions.assertEquals(ImmutableList.of(1), ids(service));
+        }
+    }
+
+    @Test
+    void testRollback() throws SQLException {
+        try (DatabaseService service = service()) {
+            Assertions.assertThrows(IllegalStateException.class, () -> service.inTransaction(t -> {
+                t.update("INSERT INTO Ids VALUES (?)", 1);
+                throw new IllegalStateException();
+            }));
+            try (Transaction transaction = service.getTransaction()) {
+                transaction.update("INSERT INTO Ids VALUES (?)", 2);
+            }
+            Assertions.assertEquals(ImmutableList.of(), ids(service));
+        }
+    }
+
+    @Test
+    void testNestedRollback() throws SQLException {
+        try (DatabaseService service = service()) {
+            service.inTransaction(t -> {
+                t.update("INSERT INTO Ids VALUES (?)", 1);
+                Assertions.assertThrows(SQLException.class, () -> service.inTransaction(n -> {
+                    Assertions.assertSame(t, n);
+                    n.update("INSERT INTO Ids VALUES (?)", 2);
+                    n.update("INSERT INTO Ids VALUES (?)", 1);
+                    return null;
+                }));
+                return service.inTransaction(n -> {
+                    n.update("INSERT INTO Ids VALUES (?)", 3);
+                    return null;
+                });
+            });
+            Assertions.assertEquals(ImmutableList.of(1, 3), ids(service));
+        }
+    }
+
+    @Test
+    void testRetriesTransient() throws SQLException {
+        try (DatabaseService service = service()) {
+            AtomicInteger attempts = new AtomicInteger();
+            service.inTransaction(t -> {
+                t.update("INSERT INTO Ids VALUES (?)", attempts.incrementAndGet());
+                if (attempts.get() == 1) {
+                    throw new SQLTransientException("Lock timeout.");
+                } else if (attempts.get() == 2) {
+                    throw new SQLException("Deadlock.", "40001");
+                }
+                return null;
+            });
+            Assertions.assertEquals(3, attempts.get());
+            Assertions.assertEquals(ImmutableList.of(3), ids(service));
+        }
+    }
+
+    @Test
+    void testRetriesExhausted() throws SQLException {
+        try (DatabaseService service = service()) {
+            AtomicInteger attempts = new AtomicInteger();
+            Assertions.assertThrows(SQLTransientException.class, () -> service.inTransaction(t -> {
+                attempts.incrementAndGet();
+                throw new SQLTransientException("Lock timeout.");
+            }));
+            Assertions.assertEquals(3, attempts.get());
+        }
+    }
+
+    @Test
+    void testNoRetryForPermanent() throws SQLException {
+        try (DatabaseService service = service()) {
+            AtomicInteger attempts = new AtomicInteger();
+            Assertions.assertThrows(SQLException.class, () -> service.inTransaction(t -> {
+                attempts.incrementAndGet();
+                t.update("INSERT INTO Missing VALUES (1)");
+                return null;
+            }));
+            Assertions.assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    void testNestedNotRetried() throws SQLException {
+        try (DatabaseService service = service()) {
+            AtomicInteger outer = new AtomicInteger();
+            AtomicInteger inner = new AtomicInteger();
+            service.inTransaction(t -> {
+                outer.incrementAndGet();
+                try {
+                    service.inTransaction(n -> {
+                        inner.incrementAndGet();
+                        throw new SQLTransientException("Lock timeout.");
+                    });
+                } catch (SQLTransientException ignored) {
+                    //The nested work is only rolled back to its savepoint.
+                }
+                return null;
+            });
+            Assertions.assertEquals(1, outer.get());
+            Assertions.assertEquals(1, inner.get());
+        }
+    }
+
+}
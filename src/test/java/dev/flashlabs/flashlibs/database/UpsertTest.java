@@ -0,0 +1,54 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.util.List;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+final class UpsertTest {
+
+    private static final RowMapper<Long> COUNT = results -> results.getLong(1);
+
+    private DatabaseService service;
+    private Upsert upsert;
+
+    @BeforeAll
+    void setup() throws SQLException {
+        service = H2.builder().batchSize(8).build();
+        service.update("CREATE TABLE Scores (id INT PRIMARY KEY, score INT)");
+        upsert = Upsert.builder("Scores").columns("id", "score").keys("id").build(service);
+    }
+
+    @AfterAll
+    void close() {
+        service.close();
+    }
+
+    private static List<Object[]> rows(int count, int score) {
+        List<Object[]> rows = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[] {i, score});
+        }
+        return rows;
+    }
+
+    @Test
+    void testInsertsAndUpdates() throws SQLException {
+        upsert.execute(rows(37, 1));
+        upsert.execute(rows(21, 2));
+        Assertions.assertEquals(37L, (long) service.query(COUNT, "SELECT COUNT(*) FROM Scores").get(0));
+        Assertions.assertEquals(21L, (long) service.query(COUNT, "SELECT COUNT(*) FROM Scores WHERE score = 2").get(0));
+    }
+
+    @Test
+    void testRejectsWrongWidth() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> upsert.execute(Lists.<Object[]>newArrayList(new Object[] {1})));
+    }
+
+}
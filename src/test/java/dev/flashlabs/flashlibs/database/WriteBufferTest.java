@@ -0,0 +1,124 @@
+package dev.flashlabs.flashlibs.database;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+final class WriteBufferTest {
+
+    private static final String MERGE = "MERGE INTO Stats KEY (id) VALUES (?, ?)";
+    private static final RowMapper<Integer> VALUE = results -> results.getInt(1);
+
+    private static DatabaseService service() throws SQLException {
+        DatabaseService service = H2.service();
+        service.update("CREATE TABLE Stats (id INT PRIMARY KEY, value INT)");
+        return service;
+    }
+
+    @Test
+    void testCoalesces() throws SQLException {
+        try (DatabaseService service = service()) {
+            WriteBuffer<Integer> buffer = WriteBuffer.builder(MERGE).interval(Duration.ofHours(1)).build(service);
+            buffer.put(1, 1, 10);
+            buffer.put(2, 2, 20);
+            buffer.put(1, 1, 11);
+            Assertions.assertEquals(2, buffer.getPending());
+            Assertions.assertEquals(3, buffer.getReceived());
+            Assertions.assertEquals(1, buffer.getCoalesced());
+            buffer.flush();
+            Assertions.assertEquals(0, buffer.getPending());
+            Assertions.assertEquals(2, buffer.getWritten());
+            Assertions.assertEquals(1, buffer.getFlushes());
+            Assertions.assertEquals(ImmutableList.of(11, 20), service.query(VALUE, "SELECT value FROM Stats ORDER BY id"));
+            buffer.flush();
+            Assertions.assertEquals(1, buffer.getFlushes());
+            buffer.close();
+        }
+    }
+
+    @Test
+    void testThreshold() throws Exception {
+        try (DatabaseService service = service()) {
+            WriteBuffer<Integer> buffer = WriteBuffer.builder(MERGE).interval(Duration.ofHours(1)).threshold(3).build(service);
+            buffer.put(1, 1, 10);
+            buffer.put(2, 2, 20);
+            buffer.put(2, 2, 21);
+            Thread.sleep(100);
+            Assertions.assertEquals(0, buffer.getFlushes());
+            buffer.put(3, 3, 30);
+            for (int i = 0; i < 50 && buffer.getFlushes() == 0; i++) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals(1, buffer.getFlushes());
+            Assertions.assertEquals(ImmutableList.of(10, 21, 30), service.query(VALUE, "SELECT value FROM Stats ORDER BY id"));
+            buffer.close();
+        }
+    }
+
+    @Test
+    void testInterval() throws Exception {
+        try (DatabaseService service = service()) {
+            WriteBuffer<Integer> buffer = WriteBuffer.builder(MERGE).interval(Duration.ofMillis(20)).build(service);
+            buffer.put(1, 1, 10);
+            for (int i = 0; i < 50 && buffer.getFlushes() == 0; i++) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals(1, buffer.getWritten());
+            Assertions.assertEquals(ImmutableList.of(10), service.query(VALUE, "SELECT value FROM Stats"));
+            buffer.close();
+        }
+    }
+
+    @Test
+    void testRetriesFailedFlush() throws SQLException {
+        try (DatabaseService service = H2.service()) {
+            WriteBuffer<Integer> buffer = WriteBuffer.builder(MERGE).interval(Duration.ofHours(1)).build(service);
+            buffer.put(1, 1, 10);
+            buffer.put(2, 2, 20);
+            Assertions.assertThrows(SQLException.class, buffer::flush);
+            Assertions.assertEquals(2, buffer.getPending());
+            Assertions.assertEquals(0, buffer.getWritten());
+            service.update("CREATE TABLE Stats (id INT PRIMARY KEY, value INT)");
+            buffer.put(1, 1, 11);
+            buffer.flush();
+            Assertions.assertEquals(2, buffer.getWritten());
+            Assertions.assertEquals(ImmutableList.of(11, 20), service.query(VALUE, "SELECT value FROM Stats ORDER BY id"));
+            buffer.close();
+        }
+    }
+
+    @Test
+    void testDropsRejected() throws SQLException {
+        try (DatabaseService service = H2.service()) {
+            service.update("CREATE TABLE Stats (id INT PRIMARY KEY, value INT CHECK (value >= 0))");
+            WriteBuffer<Integer> buffer = WriteBuffer.builder(MERGE).interval(Duration.ofHours(1)).build(service);
+            buffer.put(1, 1, 10);
+            buffer.put(2, 2, -1);
+            buffer.put(3, 3, 30);
+            buffer.flush();
+            Assertions.assertEquals(0, buffer.getPending());
+            Assertions.assertEquals(2, buffer.getWritten());
+            Assertions.assertEquals(1, buffer.getRejected());
+            Assertions.assertEquals(ImmutableList.of(10, 30), service.query(VALUE, "SELECT value FROM Stats ORDER BY id"));
+            buffer.put(2, 2, 20);
+            buffer.close();
+            Assertions.assertEquals(ImmutableList.of(10, 20, 30), service.query(VALUE, "SELECT value FROM Stats ORDER BY id"));
+        }
+    }
+
+    @Test
+    void testFlushedOnClose() throws SQLException {
+        DatabaseService service = service();
+        WriteBuffer<Integer> buffer = WriteBuffer.builder(MERGE).interval(Duration.ofHours(1)).build(service);
+        buffer.put(1, 1, 10);
+        service.close();
+        Assertions.assertEquals(0, buffer.getPending());
+        try (DatabaseService reopened = DatabaseService.of(service.getSource())) {
+            Assertions.assertEquals(ImmutableList.of(10), reopened.query(VALUE, "SELECT value FROM Stats"));
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package dev.flashlabs.flashlibs.message;
+
+import dev.flashlabs.flashlibs.translation.TranslationService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+final class MessageServiceTest {
+
+    private static final Locale EN_PT = new Locale("en", "PT");
+
+    private static MessageService service() {
+        return MessageService.of(TranslationService.of("translation.messages", ClassLoader.getSystemClassLoader()));
+    }
+
+    @Test
+    void testNormalizesLocales() {
+        MessageService service = service();
+        MessageTemplate template = service.get("greeting.hello", Locale.US);
+        Assertions.assertSame(template, service.get("greeting.hello", Locale.UK));
+        Assertions.assertSame(template, service.get("greeting.hello", Locale.ROOT));
+        Assertions.assertNotSame(template, service.get("greeting.hello", EN_PT));
+        Assertions.assertEquals(1, service.getCached(Locale.ROOT));
+    }
+
+    @Test
+    void testWarmup() {
+        MessageService service = service();
+        service.warmup(Locale.US, EN_PT).join();
+        Assertions.assertEquals(2, service.getCached(Locale.UK));
+        Assertions.assertEquals(2, service.getCached(EN_PT));
+    }
+
+    @Test
+    void testReload() {
+        MessageService service = service();
+        MessageTemplate template = service.get("greeting.hello", Locale.US);
+        service.reload();
+        Assertions.assertEquals(0, service.getCached(Locale.US));
+        Assertions.assertNotSame(template, service.get("greeting.hello", Locale.US));
+    }
+
+}
@@ -0,0 +1,154 @@
+package dev.flashlabs.flashlibs.message;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.TextRepresentable;
+import org.spongepowered.api.text.TextTemplate;
+import org.spongepowered.api.text.format.TextColors;
+import org.spongepowered.api.text.format.TextFormat;
+import org.spongepowered.api.text.format.TextStyles;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares templates against the {@link TextTemplate}s they were previously
+ * compiled to, which are built here by hand and applied the same way.
+ */
+final class MessageTemplateTest {
+
+    private static final TextRepresentable PLAYER = () -> Text.of(TextColors.GOLD, "Flash");
+
+    @Test
+    void testPlain() {
+        MessageTemplate template = MessageTemplate.of("Hello ${@player}!");
+        TextTemplate legacy = TextTemplate.of(Text.of("Hello "), TextTemplate.arg("player"), Text.of("!"));
+        Assertions.assertEquals(ImmutableList.of("player"), template.getArguments());
+        assertRendered(legacy(legacy, ImmutableMap.of("player", "Flash")), template.render("Flash"));
+        assertRendered(legacy(legacy, ImmutableMap.of("player", "Flash")), template.get(ImmutableMap.of("player", "Flash")));
+        assertRendered(legacy(legacy, ImmutableMap.of("player", "Flash")), template.get("player", "Flash"));
+    }
+
+    @Test
+    void testInheritsPrecedingFormat() {
+        MessageTemplate template = MessageTemplate.of("&aHello ${@player}&l!");
+        TextTemplate legacy = TextTemplate.of(
+                Text.of(TextColors.GREEN, "Hello "),
+                TextTemplate.arg("player").format(TextFormat.of()),
+                Text.of(TextFormat.of(TextColors.GREEN, TextStyles.BOLD), "!"));
+        assertRendered(legacy(legacy, ImmutableMap.of("player", "Flash")), template.get("player", "Flash"));
+    }
+
+    @Test
+    void testArgumentFormat() {
+        MessageTemplate template = MessageTemplate.of("&aHello ${&6&l@player}!");
+        TextTemplate legacy = TextTemplate.of(
+                Text.of(TextColors.GREEN, "Hello "),
+                TextTemplate.arg("player").format(TextFormat.of(TextColors.GOLD, TextStyles.BOLD)),
+                Text.of(TextColors.GREEN, "!"));
+        assertRendered(legacy(legacy, ImmutableMap.of("player", "Flash")), template.get("player", "Flash"));
+    }
+
+    @Test
+    void testTextRepresentable() {
+        MessageTemplate template = MessageTemplate.of("&7Welcome ${&l@player}");
+        TextTemplate legacy = TextTemplate.of(
+                Text.of(TextColors.GRAY, "Welcome "),
+                TextTemplate.arg("player").format(TextFormat.of(TextStyles.BOLD)),
+                Text.of(TextColors.GRAY, ""));
+        assertRendered(legacy(legacy, ImmutableMap.of("player", PLAYER)), template.render(PLAYER));
+        assertRendered(legacy(legacy, ImmutableMap.of("player", PLAYER)), template.get("player", PLAYER));
+    }
+
+    @Test
+    void testMissingArguments() {
+        MessageTemplate template = MessageTemplate.of("${&c@player} in ${@world}");
+        TextTemplate legacy = TextTemplate.of(
+                TextTemplate.arg("player").format(TextFormat.of(TextColors.RED)),
+                Text.of(" in "),
+                TextTemplate.arg("world").format(TextFormat.of()),
+                Text.of(""));
+        Assertions.assertEquals(ImmutableList.of("player", "world"), template.getArguments());
+        assertRendered(legacy(legacy, ImmutableMap.of()), template.render());
+        assertRendered(legacy(legacy, ImmutableMap.of()), template.get(ImmutableMap.of()));
+        assertRendered(legacy(legacy, ImmutableMap.of("world", "spawn")), template.render(null, "spawn"));
+        assertRendered(legacy(legacy, ImmutableMap.of("world", "spawn")), template.get("world", "spawn", "unused", 1));
+    }
+
+    @Test
+    void testRepeatedArguments() {
+        MessageTemplate template = MessageTemplate.of("${@name} and ${&e@name}");
+        TextTemplate legacy = TextTemplate.of(
+                TextTemplate.arg("name").format(TextFormat.of()),
+                Text.of(" and "),
+                TextTemplate.arg("name").format(TextFormat.of(TextColors.YELLOW)),
+                Text.of(""));
+        Assertions.assertEquals(ImmutableList.of("name"), template.getArguments());
+        assertRendered(legacy(legacy, ImmutableMap.of("name", "Flash")), template.render("Flash"));
+    }
+
+    @Test
+    void testDuplicateKeysUseLast() {
+        MessageTemplate template = MessageTemplate.of("Hello ${@player}!");
+        TextTemplate legacy = TextTemplate.of(Text.of("Hello "), TextTemplate.arg("player"), Text.of("!"));
+        assertRendered(legacy(legacy, ImmutableMap.of("player", "Labs")), template.get("player", "Flash", "player", "Labs"));
+    }
+
+    @Test
+    void testIncompleteArgument() {
+        MessageTemplate template = MessageTemplate.of("Hello ${@player}!");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> template.get("player", "Flash", "world"));
+    }
+
+    @Test
+    void testInvalidArgument() {
+        MessageTemplate template = MessageTemplate.of("Cost: ${&a$5}");
+        TextTemplate legacy = TextTemplate.of(Text.of("Cost: "), Text.of(TextColors.GREEN, "$5"), Text.of(""));
+        Assertions.assertEquals(ImmutableList.of(), template.getArguments());
+        assertRendered(legacy(legacy, ImmutableMap.of()), template.render());
+    }
+
+    /**
+     * Applies arguments the way the previous implementation did, replacing
+     * missing arguments with {@code @key}.
+     */
+    private static Text legacy(TextTemplate template, Map<String, Object> args) {
+        Map<String, Object> map = Maps.newHashMap(args);
+        template.getArguments().keySet().forEach(k -> map.putIfAbsent(k, "@" + k));
+        return template.apply(map).build();
+    }
+
+    /**
+     * Asserts both texts display the same content with the same formatting,
+     * regardless of how the content is split between children.
+     */
+    private static void assertRendered(Text expected, Text actual) {
+        Assertions.assertEquals(flatten(expected), flatten(actual));
+    }
+
+    private static List<Map.Entry<TextFormat, String>> flatten(Text text) {
+        List<Map.Entry<TextFormat, String>> parts = Lists.newArrayList();
+        flatten(text, TextFormat.of(), parts);
+        return parts;
+    }
+
+    private static void flatten(Text text, TextFormat parent, List<Map.Entry<TextFormat, String>> parts) {
+        TextFormat format = parent.merge(text.getFormat());
+        String content = text.toPlainSingle();
+        if (!content.isEmpty()) {
+            Map.Entry<TextFormat, String> last = parts.isEmpty() ? null : parts.get(parts.size() - 1);
+            if (last != null && last.getKey().equals(format)) {
+                parts.set(parts.size() - 1, Maps.immutableEntry(format, last.getValue() + content));
+            } else {
+                parts.add(Maps.immutableEntry(format, content));
+            }
+        }
+        text.getChildren().forEach(c -> flatten(c, format, parts));
+    }
+
+}
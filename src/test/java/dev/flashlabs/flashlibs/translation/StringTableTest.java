@@ -0,0 +1,42 @@
+package dev.flashlabs.flashlibs.translation;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+final class StringTableTest {
+
+    @Test
+    void testEmpty() {
+        StringTable table = new StringTable(ImmutableMap.of());
+        Assertions.assertNull(table.get("key"));
+        Assertions.assertNull(table.get(""));
+    }
+
+    @Test
+    void testCollidingHashes() {
+        //"Aa" and "BB" have the same hash code, as do their concatenations.
+        Assertions.assertEquals("Aa".hashCode(), "BB".hashCode());
+        StringTable table = new StringTable(ImmutableMap.of("Aa", "first", "BB", "second", "AaAa", "third", "BBBB", "fourth"));
+        Assertions.assertEquals("first", table.get("Aa"));
+        Assertions.assertEquals("second", table.get("BB"));
+        Assertions.assertEquals("third", table.get("AaAa"));
+        Assertions.assertEquals("fourth", table.get("BBBB"));
+        Assertions.assertNull(table.get("AaBB"));
+    }
+
+    @Test
+    void testMany() {
+        Map<String, String> values = Maps.newHashMap();
+        for (int i = 0; i < 1000; i++) {
+            values.put("key." + i, "value " + i);
+        }
+        StringTable table = new StringTable(values);
+        values.forEach((key, value) -> Assertions.assertEquals(value, table.get(key)));
+        Assertions.assertNull(table.get("key.1000"));
+    }
+
+}
@@ -20,6 +20,7 @@ final class TranslationServiceTest {
                 Arguments.arguments("greeting.hello", Locales.DEFAULT, "Hello there!"),
                 Arguments.arguments("greeting.hello", Locales.EN_US, "Hello there!"),
                 Arguments.arguments("greeting.hello", Locales.EN_PT, "Ahoy matey!"),
+                Arguments.arguments("greeting.bye", Locales.EN_PT, "Goodbye!"),
                 Arguments.arguments("absent-key", Locales.DEFAULT, "absent-key")
         );
     }